@@ -0,0 +1,34 @@
+package me.dm7.barcodescanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import me.dm7.barcodescanner.zbar.BarcodeFormat;
+
+/** Looking up the ZBar format of every symbol found. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BarcodeFormatBenchmark {
+    // The first and last entries of ALL_FORMATS, EAN8 and CODE128, and an unknown id.
+    @Param({"8", "128", "-1"})
+    public int id;
+
+    @Benchmark
+    public BarcodeFormat getFormatById() {
+        return BarcodeFormat.getFormatById(id);
+    }
+}
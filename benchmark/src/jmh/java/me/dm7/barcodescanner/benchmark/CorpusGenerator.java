@@ -0,0 +1,104 @@
+package me.dm7.barcodescanner.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.EAN13Writer;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the frames of {@link FrameCorpus}. The barcodes are rendered upright in portrait and
+ * the frame is stored the way a back camera in landscape delivers it, on an unevenly lit
+ * background with a little blur. There is no sensor noise, which would keep the frames from
+ * compressing. The output is the same on every run.
+ *
+ * Usage: {@code CorpusGenerator <output directory>}
+ */
+public final class CorpusGenerator {
+    private static final String QR_CONTENTS = "https://github.com/dm77/barcodescanner";
+    private static final String EAN13_CONTENTS = "9780201379624";
+
+    private CorpusGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException, WriterException {
+        File directory = new File(args[0]);
+        for (String previewSize : FrameCorpus.PREVIEW_SIZES) {
+            int width = FrameCorpus.parseWidth(previewSize);
+            int height = FrameCorpus.parseHeight(previewSize);
+            for (String name : FrameCorpus.FRAMES) {
+                byte[] frame = render(name, width, height);
+                write(new File(directory, name + "_" + previewSize + ".y800.gz"), frame);
+            }
+        }
+    }
+
+    private static byte[] render(String name, int width, int height) throws WriterException {
+        // Portrait image as shown on screen.
+        int portraitWidth = height;
+        int portraitHeight = width;
+        int[] rect = FrameCorpus.portraitFramingRect(width, height);
+        BitMatrix code = null;
+        if ("qr".equals(name)) {
+            int size = rect[3] * 3 / 4;
+            code = new QRCodeWriter().encode(QR_CONTENTS, BarcodeFormat.QR_CODE, size, size);
+        } else if ("ean13".equals(name)) {
+            code = new EAN13Writer().encode(EAN13_CONTENTS, BarcodeFormat.EAN_13, rect[2] * 3 / 4, rect[3] / 2);
+        }
+
+        int[] portrait = new int[portraitWidth * portraitHeight];
+        int codeLeft = code != null ? (portraitWidth - code.getWidth()) / 2 : 0;
+        int codeTop = code != null ? (portraitHeight - code.getHeight()) / 2 : 0;
+        for (int y = 0; y < portraitHeight; y++) {
+            for (int x = 0; x < portraitWidth; x++) {
+                // Brighter towards the top left, like a lamp off to one side.
+                int value = 190 - 50 * (x + y) / (portraitWidth + portraitHeight);
+                int codeX = x - codeLeft;
+                int codeY = y - codeTop;
+                if (code != null && codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()
+                        && code.get(codeX, codeY)) {
+                    value = 45;
+                }
+                portrait[y * portraitWidth + x] = value;
+            }
+        }
+
+        // Rotate back to the sensor orientation with a 3x3 box blur on the way.
+        byte[] frame = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int portraitX = height - 1 - y;
+                int portraitY = x;
+                int sum = 0;
+                int count = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int sx = portraitX + dx;
+                        int sy = portraitY + dy;
+                        if (sx >= 0 && sy >= 0 && sx < portraitWidth && sy < portraitHeight) {
+                            sum += portrait[sy * portraitWidth + sx];
+                            count++;
+                        }
+                    }
+                }
+                frame[y * width + x] = (byte) (sum / count);
+            }
+        }
+        return frame;
+    }
+
+    private static void write(File file, byte[] frame) throws IOException {
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            out.write(frame);
+        } finally {
+            out.close();
+        }
+    }
+}
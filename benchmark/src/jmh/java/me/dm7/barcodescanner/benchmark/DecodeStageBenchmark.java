@@ -0,0 +1,137 @@
+package me.dm7.barcodescanner.benchmark;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import me.dm7.barcodescanner.core.FrameQualityGate;
+import me.dm7.barcodescanner.core.PreviewFrame;
+import me.dm7.barcodescanner.zxing.BinarizerSelector;
+import me.dm7.barcodescanner.zxing.ReusableHybridBinarizer;
+import me.dm7.barcodescanner.zxing.RotatedLuminanceSource;
+
+/**
+ * The stages of decoding a portrait preview frame with ZXing, each on its own. Every stage
+ * starts from the output of the one before, prepared once in {@link #setup()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DecodeStageBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String previewSize;
+
+    @Param({"qr", "ean13", "empty"})
+    public String frame;
+
+    private final PreviewFrame mPreviewFrame = new PreviewFrame();
+    private final FrameQualityGate mQualityGate = new FrameQualityGate();
+    private final BinarizerSelector mBinarizerSelector = new BinarizerSelector();
+    private RotatedLuminanceSource mLuminanceSource;
+    private ReusableHybridBinarizer mReusableBinarizer;
+    private BinaryBitmap mBinaryBitmap;
+    private MultiFormatReader mReader;
+
+    @Setup
+    public void setup() throws IOException, NotFoundException {
+        int width = FrameCorpus.parseWidth(previewSize);
+        int height = FrameCorpus.parseHeight(previewSize);
+        int[] rect = FrameCorpus.portraitFramingRect(width, height);
+        mPreviewFrame.set(FrameCorpus.load(frame, previewSize), width, height, 90,
+                rect[0], rect[1], rect[2], rect[3]);
+
+        mLuminanceSource = buildLuminanceSource();
+        mReusableBinarizer = new ReusableHybridBinarizer(mLuminanceSource);
+
+        // Binarized once up front, BinaryBitmap keeps the black matrix.
+        mBinaryBitmap = new BinaryBitmap(new HybridBinarizer(mLuminanceSource));
+        mBinaryBitmap.getBlackMatrix();
+
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, FrameCorpus.ZXING_FORMATS);
+        mReader = new MultiFormatReader();
+        mReader.setHints(hints);
+    }
+
+    /** Runs before every decode, so it has to stay far below the cost of the stages after it. */
+    @Benchmark
+    public FrameQualityGate.Verdict qualityGate() {
+        return mQualityGate.check(mPreviewFrame);
+    }
+
+    /** Runs before binarizing, pays off if it costs less than what the global threshold saves. */
+    @Benchmark
+    public BinarizerSelector.Binarizer binarizerSelector() {
+        return mBinarizerSelector.select(mLuminanceSource);
+    }
+
+    /** Presents the crop region of the frame as shown on screen, without copying the frame. */
+    @Benchmark
+    public RotatedLuminanceSource buildLuminanceSource() {
+        return new RotatedLuminanceSource(mPreviewFrame.getData(), mPreviewFrame.getWidth(),
+                mPreviewFrame.getHeight(), mPreviewFrame.getRotation(), mPreviewFrame.getCropLeft(),
+                mPreviewFrame.getCropTop(), mPreviewFrame.getCropWidth(), mPreviewFrame.getCropHeight());
+    }
+
+    /** Construction alone does nothing, the work happens on the first {@code getBlackMatrix()}. */
+    @Benchmark
+    public BitMatrix hybridBinarizer() throws NotFoundException {
+        return new HybridBinarizer(mLuminanceSource).getBlackMatrix();
+    }
+
+    /** What the decoder does for every frame, should not allocate at all. */
+    @Benchmark
+    public BitMatrix reusableHybridBinarizer() throws NotFoundException {
+        mReusableBinarizer.reset();
+        return mReusableBinarizer.getBlackMatrix();
+    }
+
+    /** The single threshold picked for evenly lit frames. Finds no threshold in the empty frame. */
+    @Benchmark
+    public BitMatrix reusableGlobalHistogramBinarizer() {
+        mReusableBinarizer.reset();
+        mReusableBinarizer.setGlobalHistogram(true);
+        try {
+            return mReusableBinarizer.getBlackMatrix();
+        } catch (NotFoundException e) {
+            return null;
+        } finally {
+            mReusableBinarizer.setGlobalHistogram(false);
+        }
+    }
+
+    @Benchmark
+    public Result decodeWithState() {
+        try {
+            return mReader.decodeWithState(mBinaryBitmap);
+        } catch (NotFoundException e) {
+            return null;
+        } finally {
+            mReader.reset();
+        }
+    }
+}
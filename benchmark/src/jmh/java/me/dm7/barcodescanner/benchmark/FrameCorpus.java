@@ -0,0 +1,90 @@
+package me.dm7.barcodescanner.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The frames in {@code src/jmh/resources/frames}. Each is the gzipped luminance plane of a
+ * landscape preview frame, named {@code <name>_<width>x<height>.y800.gz}, and is written by
+ * {@link CorpusGenerator}.
+ */
+final class FrameCorpus {
+    /** Preview sizes the corpus has frames for. */
+    static final String[] PREVIEW_SIZES = {"640x480", "1280x720", "1920x1080"};
+
+    /** A QR code, an EAN-13 barcode, and nothing but background. */
+    static final String[] FRAMES = {"qr", "ean13", "empty"};
+
+    /** Same as {@code ZXingScannerView.ALL_FORMATS}, which cannot be loaded off Android. */
+    static final List<BarcodeFormat> ZXING_FORMATS = Arrays.asList(
+            BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8,
+            BarcodeFormat.RSS_14, BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODE_128,
+            BarcodeFormat.ITF, BarcodeFormat.CODABAR, BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX,
+            BarcodeFormat.PDF_417);
+
+    private FrameCorpus() {
+    }
+
+    static int parseWidth(String previewSize) {
+        return Integer.parseInt(previewSize.split("x")[0]);
+    }
+
+    static int parseHeight(String previewSize) {
+        return Integer.parseInt(previewSize.split("x")[1]);
+    }
+
+    /**
+     * Loads a frame as a full NV21 preview buffer, the way the camera delivers it, with a
+     * neutral chroma plane after the recorded luminance.
+     */
+    static byte[] load(String name, String previewSize) throws IOException {
+        int width = parseWidth(previewSize);
+        int height = parseHeight(previewSize);
+        String resource = "/frames/" + name + "_" + previewSize + ".y800.gz";
+        InputStream in = FrameCorpus.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Missing corpus frame " + resource);
+        }
+        byte[] luminance;
+        try {
+            luminance = readAll(new GZIPInputStream(in));
+        } finally {
+            in.close();
+        }
+        if (luminance.length != width * height) {
+            throw new IOException(resource + " is not " + previewSize);
+        }
+        byte[] frame = new byte[width * height * 3 / 2];
+        System.arraycopy(luminance, 0, frame, 0, luminance.length);
+        Arrays.fill(frame, luminance.length, frame.length, (byte) 128);
+        return frame;
+    }
+
+    /**
+     * The portrait framing rect of {@code ViewFinderView} for a preview size, in rotated
+     * coordinates: left, top, width, height.
+     */
+    static int[] portraitFramingRect(int width, int height) {
+        int rotatedWidth = height;
+        int rotatedHeight = width;
+        int cropWidth = rotatedWidth * 7 / 8;
+        int cropHeight = rotatedHeight * 3 / 8;
+        return new int[]{(rotatedWidth - cropWidth) / 2, (rotatedHeight - cropHeight) / 2, cropWidth, cropHeight};
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,96 @@
+package me.dm7.barcodescanner.benchmark;
+
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import me.dm7.barcodescanner.core.FrameProcessor;
+import me.dm7.barcodescanner.core.ScanLines;
+import me.dm7.barcodescanner.zxing.ZXingFrameDecoder;
+
+/**
+ * A preview frame all the way to results, through the same {@link FrameProcessor} the scanner
+ * views run on their decode thread. Reported in milliseconds per frame; run with
+ * {@code -prof gc} for the bytes allocated per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FrameDecodeBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String previewSize;
+
+    @Param({"qr", "ean13", "empty"})
+    public String frame;
+
+    private byte[] mData;
+    private int mWidth;
+    private int mHeight;
+    private int[] mRect;
+    private FrameProcessor<Result> mFrameProcessor;
+    private FrameProcessor<Result> mLineScanProcessor;
+    private FrameProcessor<Result> mPyramidProcessor;
+
+    @Setup
+    public void setup() throws IOException {
+        mWidth = FrameCorpus.parseWidth(previewSize);
+        mHeight = FrameCorpus.parseHeight(previewSize);
+        mRect = FrameCorpus.portraitFramingRect(mWidth, mHeight);
+        mData = FrameCorpus.load(frame, previewSize);
+        mFrameProcessor = new FrameProcessor<Result>(new ZXingFrameDecoder(FrameCorpus.ZXING_FORMATS));
+
+        if (!"empty".equals(frame) && mFrameProcessor.decode(mData, mWidth, mHeight, 90,
+                mRect[0], mRect[1], mRect[2], mRect[3]) == null) {
+            throw new IllegalStateException("No barcode found in corpus frame " + frame + "_" + previewSize);
+        }
+
+        mLineScanProcessor = new FrameProcessor<Result>(new ZXingFrameDecoder(FrameCorpus.ZXING_FORMATS));
+        mLineScanProcessor.setScanLines(new ScanLines());
+        if ("ean13".equals(frame) && mLineScanProcessor.decode(mData, mWidth, mHeight, 90,
+                mRect[0], mRect[1], mRect[2], mRect[3]) == null) {
+            throw new IllegalStateException("No barcode found on the scan lines of " + frame + "_" + previewSize);
+        }
+
+        ZXingFrameDecoder pyramidDecoder = new ZXingFrameDecoder(FrameCorpus.ZXING_FORMATS);
+        pyramidDecoder.setPyramidLevels(2);
+        mPyramidProcessor = new FrameProcessor<Result>(pyramidDecoder);
+        if (!"empty".equals(frame) && mPyramidProcessor.decode(mData, mWidth, mHeight, 90,
+                mRect[0], mRect[1], mRect[2], mRect[3]) == null) {
+            throw new IllegalStateException("No barcode found with the pyramid in " + frame + "_" + previewSize);
+        }
+    }
+
+    @Benchmark
+    public List<Result> portraitFrame() {
+        return mFrameProcessor.decode(mData, mWidth, mHeight, 90, mRect[0], mRect[1], mRect[2], mRect[3]);
+    }
+
+    /** Shrunk by 4 and 2 first where the framing rect is big enough, 2D formats only. */
+    @Benchmark
+    public List<Result> portraitFramePyramid() {
+        return mPyramidProcessor.decode(mData, mWidth, mHeight, 90, mRect[0], mRect[1], mRect[2], mRect[3]);
+    }
+
+    /** Only the lines around the laser line, with the 1D readers. Finds nothing in the QR frame. */
+    @Benchmark
+    public List<Result> portraitFrameLineScan() {
+        return mLineScanProcessor.decode(mData, mWidth, mHeight, 90, mRect[0], mRect[1], mRect[2], mRect[3]);
+    }
+}
@@ -0,0 +1,76 @@
+package me.dm7.barcodescanner.benchmark;
+
+/**
+ * Rotates a region of a preview frame's luminance plane by 90 degrees clockwise, the way the
+ * frame is shown in portrait, into a buffer that is reused across frames. Only the requested
+ * region is touched, so cropping to the framing rect happens before the rotation rather than
+ * after it.
+ *
+ * The scanner used to decode portrait frames this way before it read them through
+ * {@code RotatedLuminanceSource}; kept here as the baseline {@link RotationBenchmark} compares
+ * against.
+ *
+ * Not thread safe, use one instance per decode thread.
+ */
+class FrameTransform {
+    // Square tiles keep both the rows being written and the columns being read in cache.
+    private static final int BLOCK_SIZE = 32;
+
+    private byte[] mBuffer;
+    private int mWidth;
+    private int mHeight;
+
+    /**
+     * Rotates the region {@code [left, left + cropWidth) x [top, top + cropHeight)} of the rotated
+     * frame, given in rotated coordinates, into {@link #getBuffer()}.
+     *
+     * @param data the unrotated frame, luminance plane first
+     * @param width width of the unrotated frame
+     * @param height height of the unrotated frame
+     * @return the buffer holding the {@code cropWidth x cropHeight} result
+     */
+    byte[] rotateCrop(byte[] data, int width, int height, int left, int top, int cropWidth, int cropHeight) {
+        // The rotated frame is height pixels wide and width pixels tall.
+        if (left < 0 || top < 0 || cropWidth <= 0 || cropHeight <= 0 || left + cropWidth > height || top + cropHeight > width) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+
+        int size = cropWidth * cropHeight;
+        if (mBuffer == null || mBuffer.length != size) {
+            mBuffer = new byte[size];
+        }
+        mWidth = cropWidth;
+        mHeight = cropHeight;
+
+        byte[] out = mBuffer;
+        int lastRow = height - 1 - left;
+        for (int blockY = 0; blockY < cropHeight; blockY += BLOCK_SIZE) {
+            int blockYEnd = Math.min(blockY + BLOCK_SIZE, cropHeight);
+            for (int blockX = 0; blockX < cropWidth; blockX += BLOCK_SIZE) {
+                int blockXEnd = Math.min(blockX + BLOCK_SIZE, cropWidth);
+                for (int y = blockY; y < blockYEnd; y++) {
+                    // Output row y is sensor column top + y, read from the bottom up.
+                    int outIndex = y * cropWidth + blockX;
+                    int inIndex = (lastRow - blockX) * width + top + y;
+                    for (int x = blockX; x < blockXEnd; x++) {
+                        out[outIndex++] = data[inIndex];
+                        inIndex -= width;
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+}
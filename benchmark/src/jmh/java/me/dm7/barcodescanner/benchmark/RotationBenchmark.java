@@ -0,0 +1,92 @@
+package me.dm7.barcodescanner.benchmark;
+
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import me.dm7.barcodescanner.zxing.RotatedLuminanceSource;
+
+/**
+ * Compares the ways of getting the portrait framing rect out of a landscape preview frame.
+ * Every benchmark ends with {@code getMatrix()}, which is what {@code HybridBinarizer} reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RotationBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String previewSize;
+
+    private byte[] mFrame;
+    private int mWidth;
+    private int mHeight;
+    private int mLeft;
+    private int mTop;
+    private int mCropWidth;
+    private int mCropHeight;
+    private FrameTransform mFrameTransform;
+
+    @Setup
+    public void setup() {
+        String[] size = previewSize.split("x");
+        mWidth = Integer.parseInt(size[0]);
+        mHeight = Integer.parseInt(size[1]);
+        mFrame = new byte[mWidth * mHeight * 3 / 2];
+        new Random(42).nextBytes(mFrame);
+
+        // Same proportions as the portrait framing rect of ViewFinderView, in rotated coordinates.
+        int rotatedWidth = mHeight;
+        int rotatedHeight = mWidth;
+        mCropWidth = rotatedWidth * 7 / 8;
+        mCropHeight = rotatedHeight * 3 / 8;
+        mLeft = (rotatedWidth - mCropWidth) / 2;
+        mTop = (rotatedHeight - mCropHeight) / 2;
+
+        mFrameTransform = new FrameTransform();
+    }
+
+    /** Rotates the whole frame and crops afterwards, like the scanner views used to. */
+    @Benchmark
+    public byte[] copyLoop() {
+        byte[] data = mFrame;
+        int width = mWidth;
+        int height = mHeight;
+        byte[] rotatedData = new byte[data.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                rotatedData[x * height + height - y - 1] = data[x + y * width];
+        }
+        return new PlanarYUVLuminanceSource(rotatedData, height, width, mLeft, mTop,
+                mCropWidth, mCropHeight, false).getMatrix();
+    }
+
+    @Benchmark
+    public byte[] frameTransform() {
+        byte[] rotatedData = mFrameTransform.rotateCrop(mFrame, mWidth, mHeight, mLeft, mTop,
+                mCropWidth, mCropHeight);
+        return new PlanarYUVLuminanceSource(rotatedData, mCropWidth, mCropHeight, 0, 0,
+                mCropWidth, mCropHeight, false).getMatrix();
+    }
+
+    @Benchmark
+    public byte[] rotatedLuminanceSource() {
+        return new RotatedLuminanceSource(mFrame, mWidth, mHeight, 90, mLeft, mTop,
+                mCropWidth, mCropHeight).getMatrix();
+    }
+}
@@ -0,0 +1,84 @@
+package me.dm7.barcodescanner.benchmark;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import me.dm7.barcodescanner.core.PreviewFrame;
+import me.dm7.barcodescanner.zxing.ZXingFrameDecoder;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that decoding a frame with {@link ZXingFrameDecoder} allocates no frame sized buffers
+ * of its own once it is warmed up, by counting the bytes the decoding thread allocates over
+ * the corpus frames with the default formats and decode tiers.
+ *
+ * What is left is ZXing's. A frame without a barcode allocates a few hundred bytes in the
+ * readers, plus what the PDF417 detector leaves behind: when it finds nothing it copies the
+ * whole black matrix, a bit per pixel of the crop, to look again upside down, and scanning
+ * the rows of both leaves a little more than that again. A frame with a barcode also
+ * allocates the result, its text and points and the detector's working objects, tens of
+ * kilobytes for a QR code.
+ */
+public class DecodeAllocationTest {
+    private static final long EMPTY_FRAME_BUDGET = 1024;
+    // Bytes per pixel of the crop for the PDF417 detector's copy of the matrix and its scans.
+    private static final double PDF417_BYTES_PER_PIXEL = 3 / 8.0;
+    private static final long BARCODE_FRAME_BUDGET = 32 * 1024;
+    private static final int WARMUP_FRAMES = 100;
+    private static final int MEASURED_FRAMES = 50;
+    private static final String[] PREVIEW_SIZES = {"640x480", "1280x720", "1920x1080"};
+
+    @Test
+    public void emptyFrames() throws IOException {
+        for (String previewSize : PREVIEW_SIZES) {
+            int[] rect = framingRect(previewSize);
+            long budget = EMPTY_FRAME_BUDGET + (long) (rect[2] * rect[3] * PDF417_BYTES_PER_PIXEL);
+            assertWithinBudget("empty", previewSize, budget);
+        }
+    }
+
+    @Test
+    public void barcodeFrames() throws IOException {
+        for (String previewSize : PREVIEW_SIZES) {
+            assertWithinBudget("qr", previewSize, BARCODE_FRAME_BUDGET);
+            assertWithinBudget("ean13", previewSize, BARCODE_FRAME_BUDGET);
+        }
+    }
+
+    private static void assertWithinBudget(String frame, String previewSize, long budget) throws IOException {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        int width = FrameCorpus.parseWidth(previewSize);
+        int height = FrameCorpus.parseHeight(previewSize);
+        int[] rect = framingRect(previewSize);
+        byte[] data = FrameCorpus.load(frame, previewSize);
+        ZXingFrameDecoder frameDecoder = new ZXingFrameDecoder(FrameCorpus.ZXING_FORMATS);
+        PreviewFrame previewFrame = new PreviewFrame();
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            previewFrame.set(data, width, height, 90, rect[0], rect[1], rect[2], rect[3]);
+            frameDecoder.decode(previewFrame, false);
+        }
+        long threadId = Thread.currentThread().getId();
+        long start = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            previewFrame.set(data, width, height, 90, rect[0], rect[1], rect[2], rect[3]);
+            frameDecoder.decode(previewFrame, false);
+        }
+        long perFrame = (threadMXBean.getThreadAllocatedBytes(threadId) - start) / MEASURED_FRAMES;
+
+        assertTrue(frame + "_" + previewSize + " allocated " + perFrame + " bytes per frame, the budget is " + budget,
+                perFrame <= budget);
+    }
+
+    private static int[] framingRect(String previewSize) {
+        return FrameCorpus.portraitFramingRect(FrameCorpus.parseWidth(previewSize), FrameCorpus.parseHeight(previewSize));
+    }
+}
@@ -0,0 +1,41 @@
+package me.dm7.barcodescanner.combined;
+
+/**
+ * A barcode found by either engine. The engine's own result is available through
+ * {@link #getRawResult()}: a {@code com.google.zxing.Result} for {@link Engine#ZXING} and a
+ * {@code me.dm7.barcodescanner.zbar.Result} for {@link Engine#ZBAR}.
+ */
+public class CombinedResult {
+    public enum Engine {
+        ZXING,
+        ZBAR
+    }
+
+    private final Engine mEngine;
+    private final String mContents;
+    private final String mFormatName;
+    private final Object mRawResult;
+
+    public CombinedResult(Engine engine, String contents, String formatName, Object rawResult) {
+        mEngine = engine;
+        mContents = contents;
+        mFormatName = formatName;
+        mRawResult = rawResult;
+    }
+
+    public Engine getEngine() {
+        return mEngine;
+    }
+
+    public String getContents() {
+        return mContents;
+    }
+
+    public String getFormatName() {
+        return mFormatName;
+    }
+
+    public Object getRawResult() {
+        return mRawResult;
+    }
+}
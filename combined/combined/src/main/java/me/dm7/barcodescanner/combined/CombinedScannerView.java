@@ -0,0 +1,165 @@
+package me.dm7.barcodescanner.combined;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.dm7.barcodescanner.core.BarcodeScannerView;
+import me.dm7.barcodescanner.core.FrameDecoder;
+import me.dm7.barcodescanner.core.PreviewFrame;
+import me.dm7.barcodescanner.core.RacingFrameDecoder;
+import me.dm7.barcodescanner.zbar.ZBarFrameDecoder;
+import me.dm7.barcodescanner.zbar.ZBarScannerView;
+import me.dm7.barcodescanner.zxing.ZXingFrameDecoder;
+import me.dm7.barcodescanner.zxing.ZXingScannerView;
+
+/**
+ * Decodes every frame with ZXing and ZBar in parallel and delivers whichever finds a barcode
+ * first.
+ */
+public class CombinedScannerView extends BarcodeScannerView<CombinedResult> {
+    public interface ResultHandler {
+        public void handleResult(CombinedResult rawResult);
+    }
+
+    public interface MultipleResultHandler {
+        public void handleResults(List<CombinedResult> rawResults);
+    }
+
+    // The ZXing format of each ZBar format, so the same barcode found by both engines is a
+    // duplicate. ISBN barcodes are EAN-13 barcodes to ZXing.
+    private static final Map<me.dm7.barcodescanner.zbar.BarcodeFormat, com.google.zxing.BarcodeFormat> ZXING_FORMATS =
+            new HashMap<me.dm7.barcodescanner.zbar.BarcodeFormat, com.google.zxing.BarcodeFormat>();
+
+    static {
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.EAN8, com.google.zxing.BarcodeFormat.EAN_8);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.UPCE, com.google.zxing.BarcodeFormat.UPC_E);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.ISBN10, com.google.zxing.BarcodeFormat.EAN_13);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.UPCA, com.google.zxing.BarcodeFormat.UPC_A);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.EAN13, com.google.zxing.BarcodeFormat.EAN_13);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.ISBN13, com.google.zxing.BarcodeFormat.EAN_13);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.I25, com.google.zxing.BarcodeFormat.ITF);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.DATABAR, com.google.zxing.BarcodeFormat.RSS_14);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.DATABAR_EXP, com.google.zxing.BarcodeFormat.RSS_EXPANDED);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.CODABAR, com.google.zxing.BarcodeFormat.CODABAR);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.CODE39, com.google.zxing.BarcodeFormat.CODE_39);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.PDF417, com.google.zxing.BarcodeFormat.PDF_417);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.QRCODE, com.google.zxing.BarcodeFormat.QR_CODE);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.CODE93, com.google.zxing.BarcodeFormat.CODE_93);
+        ZXING_FORMATS.put(me.dm7.barcodescanner.zbar.BarcodeFormat.CODE128, com.google.zxing.BarcodeFormat.CODE_128);
+    }
+
+    private final ZXingFrameDecoder mZXingFrameDecoder = new ZXingFrameDecoder(ZXingScannerView.ALL_FORMATS);
+    private final ZBarFrameDecoder mZBarFrameDecoder = new ZBarFrameDecoder(me.dm7.barcodescanner.zbar.BarcodeFormat.ALL_FORMATS);
+    private final RacingFrameDecoder<CombinedResult> mFrameDecoder = createFrameDecoder();
+    private ResultHandler mResultHandler;
+    private MultipleResultHandler mMultipleResultHandler;
+
+    public CombinedScannerView(Context context) {
+        super(context);
+        setFrameDecoder(mFrameDecoder);
+    }
+
+    public CombinedScannerView(Context context, AttributeSet attributeSet) {
+        super(context, attributeSet);
+        setFrameDecoder(mFrameDecoder);
+    }
+
+    public void setZXingFormats(List<com.google.zxing.BarcodeFormat> formats) {
+        mZXingFrameDecoder.setFormats(formats != null ? formats : ZXingScannerView.ALL_FORMATS);
+    }
+
+    public void setZBarFormats(List<me.dm7.barcodescanner.zbar.BarcodeFormat> formats) {
+        mZBarFrameDecoder.setFormats(formats != null ? formats : me.dm7.barcodescanner.zbar.BarcodeFormat.ALL_FORMATS);
+    }
+
+    public void setResultHandler(ResultHandler resultHandler) {
+        mResultHandler = resultHandler;
+    }
+
+    /**
+     * Once set, every barcode found in a frame by the faster engine is delivered together. The
+     * {@link ResultHandler}, if any, still receives the first of them.
+     */
+    public void setMultipleResultHandler(MultipleResultHandler multipleResultHandler) {
+        mMultipleResultHandler = multipleResultHandler;
+        setDecodeMultiple(multipleResultHandler != null);
+    }
+
+    @Override
+    public void stopCamera() {
+        super.stopCamera();
+        mFrameDecoder.shutdown();
+    }
+
+    @Override
+    protected void handleResults(List<CombinedResult> rawResults) {
+        if(mMultipleResultHandler != null) {
+            mMultipleResultHandler.handleResults(rawResults);
+        }
+        if(mResultHandler != null) {
+            mResultHandler.handleResult(rawResults.get(0));
+        }
+    }
+
+    private RacingFrameDecoder<CombinedResult> createFrameDecoder() {
+        List<FrameDecoder<CombinedResult>> frameDecoders = new ArrayList<FrameDecoder<CombinedResult>>();
+        frameDecoders.add(new CombinedFrameDecoder() {
+            @Override
+            public List<CombinedResult> decode(PreviewFrame frame, boolean multiple) {
+                List<com.google.zxing.Result> rawResults = mZXingFrameDecoder.decode(frame, multiple);
+                if(rawResults == null) {
+                    return null;
+                }
+                List<CombinedResult> results = new ArrayList<CombinedResult>(rawResults.size());
+                for(com.google.zxing.Result rawResult : rawResults) {
+                    results.add(new CombinedResult(CombinedResult.Engine.ZXING, rawResult.getText(),
+                            rawResult.getBarcodeFormat().toString(), rawResult));
+                }
+                return results;
+            }
+
+            @Override
+            public Object getFormat(CombinedResult result) {
+                return ((com.google.zxing.Result) result.getRawResult()).getBarcodeFormat();
+            }
+        });
+        frameDecoders.add(new CombinedFrameDecoder() {
+            @Override
+            public List<CombinedResult> decode(PreviewFrame frame, boolean multiple) {
+                List<me.dm7.barcodescanner.zbar.Result> rawResults = mZBarFrameDecoder.decode(frame, multiple);
+                if(rawResults == null) {
+                    return null;
+                }
+                List<CombinedResult> results = new ArrayList<CombinedResult>(rawResults.size());
+                for(me.dm7.barcodescanner.zbar.Result rawResult : rawResults) {
+                    results.add(new CombinedResult(CombinedResult.Engine.ZBAR, rawResult.getContents(),
+                            rawResult.getBarcodeFormat().getName(), rawResult));
+                }
+                return results;
+            }
+
+            @Override
+            public Object getFormat(CombinedResult result) {
+                me.dm7.barcodescanner.zbar.BarcodeFormat format =
+                        ((me.dm7.barcodescanner.zbar.Result) result.getRawResult()).getBarcodeFormat();
+                com.google.zxing.BarcodeFormat zxingFormat = ZXING_FORMATS.get(format);
+                return zxingFormat != null ? zxingFormat : format;
+            }
+        });
+        return new RacingFrameDecoder<CombinedResult>(frameDecoders);
+    }
+
+    /** Formats are ZXing's for both engines, see {@link #ZXING_FORMATS}. */
+    private static abstract class CombinedFrameDecoder implements FrameDecoder<CombinedResult> {
+        @Override
+        public String getContents(CombinedResult result) {
+            return result.getContents();
+        }
+    }
+}
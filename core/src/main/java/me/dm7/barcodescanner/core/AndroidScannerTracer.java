@@ -0,0 +1,68 @@
+package me.dm7.barcodescanner.core;
+
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+
+/**
+ * Forwards the scanner's stages to {@link Trace}, so they show up in systrace and Perfetto.
+ * Sections need API 18 and are ignored below. Async sections, such as autofocus, need API 29
+ * and are called through reflection since they are newer than the compile SDK.
+ */
+public class AndroidScannerTracer implements ScannerTracer {
+    private static final String TAG = "AndroidScannerTracer";
+
+    private final boolean mSectionsSupported = Build.VERSION.SDK_INT >= 18;
+    private Method mBeginAsyncSection;
+    private Method mEndAsyncSection;
+
+    public AndroidScannerTracer() {
+        if (Build.VERSION.SDK_INT >= 29) {
+            try {
+                mBeginAsyncSection = Trace.class.getMethod("beginAsyncSection", String.class, int.class);
+                mEndAsyncSection = Trace.class.getMethod("endAsyncSection", String.class, int.class);
+            } catch (NoSuchMethodException e) {
+                Log.w(TAG, "Async trace sections not available", e);
+                mBeginAsyncSection = null;
+                mEndAsyncSection = null;
+            }
+        }
+    }
+
+    @Override
+    public void beginSection(String name) {
+        if (mSectionsSupported) {
+            Trace.beginSection(name);
+        }
+    }
+
+    @Override
+    public void endSection() {
+        if (mSectionsSupported) {
+            Trace.endSection();
+        }
+    }
+
+    @Override
+    public void beginAsyncSection(String name, int cookie) {
+        invoke(mBeginAsyncSection, name, cookie);
+    }
+
+    @Override
+    public void endAsyncSection(String name, int cookie) {
+        invoke(mEndAsyncSection, name, cookie);
+    }
+
+    private static void invoke(Method method, String name, int cookie) {
+        if (method == null) {
+            return;
+        }
+        try {
+            method.invoke(null, name, cookie);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not trace " + name, e);
+        }
+    }
+}
@@ -1,19 +1,60 @@
 package me.dm7.barcodescanner.core;
 
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.hardware.Camera;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.widget.FrameLayout;
 
-public abstract class BarcodeScannerView extends FrameLayout implements Camera.PreviewCallback  {
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Camera preview with a view finder that decodes preview frames on a background thread.
+ * Subclasses plug in a barcode library through {@link #setFrameDecoder} and receive its
+ * results in {@link #handleResults}. Frames arrive through a {@link CameraFrameSource} and are
+ * decoded by a {@link FrameProcessor}.
+ *
+ * @param <T> the result type of the barcode library
+ */
+public abstract class BarcodeScannerView<T> extends FrameLayout implements FrameSource.Callback {
+    private static final String DECODE_THREAD_NAME = "BarcodeScannerDecode";
+
     private Camera mCamera;
     private CameraPreview mPreview;
+    private CameraFrameSource mFrameSource;
     private ViewFinderView mViewFinderView;
     private Rect mFramingRectInPreview;
 
+    private HandlerThread mDecodeThread;
+    private Handler mDecodeHandler;
+    private volatile boolean mScanning;
+    private volatile boolean mContinuousScanning;
+    // Bumped whenever scanning stops, so results that were found before are not delivered.
+    private volatile int mScanGeneration;
+    private final FrameProcessor<T> mFrameProcessor = new FrameProcessor<T>();
+    // When scanning was started or resumed, and how many frames arrived since, for ResultTiming.
+    private volatile long mScanStartTime;
+    private int mFramesSinceScanStart;
+    private boolean mFirstResultDelivered;
+    private ResultTiming mLastResultTiming;
+
+    // Single slot mailbox between the preview callback and the decode thread. A newer frame
+    // always replaces one that has not been picked up yet.
+    private final Object mFrameLock = new Object();
+    private byte[] mPendingFrame;
+    private int mPendingWidth;
+    private int mPendingHeight;
+    private long mPendingTime;
+    private int mPendingFrameNumber;
+    private boolean mDecodePosted;
+
     public BarcodeScannerView(Context context) {
         super(context);
         setupLayout();
@@ -26,27 +67,354 @@ public abstract class BarcodeScannerView extends FrameLayout implements Camera.P
 
     public void setupLayout() {
         mPreview = new CameraPreview(getContext());
+        mFrameSource = new CameraFrameSource(mPreview);
         mViewFinderView = new ViewFinderView(getContext());
         addView(mPreview);
         addView(mViewFinderView);
     }
 
     public void startCamera() {
-        mCamera = CameraUtils.getCameraInstance();
+        ScannerTrace.beginSection(ScannerTrace.OPEN_CAMERA);
+        try {
+            mCamera = CameraUtils.getCameraInstance();
+        } finally {
+            ScannerTrace.endSection();
+        }
         if(mCamera != null) {
+            startDecodeThread();
+            mFrameProcessor.getDuplicateResultFilter().clear();
+            startScanSession();
+            mScanning = true;
             mViewFinderView.setupViewFinder();
-            mPreview.setCamera(mCamera, this);
+            mFrameSource.start(this);
+            mPreview.setCamera(mCamera, mFrameSource);
             mPreview.initCameraPreview();
         }
     }
 
     public void stopCamera() {
+        mScanning = false;
+        mScanGeneration++;
         if(mCamera != null) {
-            mPreview.stopCameraPreview();
-            mPreview.setCamera(null, null);
-            mCamera.release();
-            mCamera = null;
+            ScannerTrace.beginSection(ScannerTrace.STOP_CAMERA);
+            try {
+                mPreview.stopCameraPreview();
+                mPreview.setCamera(null, null);
+                mCamera.release();
+                mCamera = null;
+            } finally {
+                ScannerTrace.endSection();
+            }
         }
+        mFrameSource.stop();
+        stopDecodeThread();
+    }
+
+    /**
+     * In continuous mode the camera keeps running after a barcode was found and every
+     * following frame is decoded as well. Otherwise the camera is stopped before a result is
+     * delivered, which is the default.
+     */
+    public void setContinuousScanning(boolean continuous) {
+        mContinuousScanning = continuous;
+    }
+
+    public boolean isContinuousScanning() {
+        return mContinuousScanning;
+    }
+
+    /**
+     * In continuous mode, the time in milliseconds a barcode has to be out of view before it is
+     * delivered again. Defaults to {@link DuplicateResultFilter#DEFAULT_TIMEOUT}, 0 delivers
+     * a result for every frame it is found in.
+     */
+    public void setDuplicateResultTimeout(long timeout) {
+        mFrameProcessor.getDuplicateResultFilter().setTimeout(timeout);
+    }
+
+    public long getDuplicateResultTimeout() {
+        return mFrameProcessor.getDuplicateResultFilter().getTimeout();
+    }
+
+    /** Stops decoding frames while the preview keeps running. */
+    public void pauseScanning() {
+        mScanning = false;
+        mScanGeneration++;
+        dropPendingFrame();
+    }
+
+    /**
+     * Starts decoding frames again after {@link #pauseScanning()}, without reopening the
+     * camera. Does nothing if the camera is not running.
+     */
+    public void resumeScanning() {
+        if(mCamera != null && mDecodeHandler != null && !mScanning) {
+            startScanSession();
+            mScanning = true;
+            mFrameSource.requestFrame();
+        }
+    }
+
+    public boolean isScanning() {
+        return mScanning;
+    }
+
+    private void startScanSession() {
+        mScanStartTime = System.nanoTime();
+        mFramesSinceScanStart = 0;
+        mFirstResultDelivered = false;
+        SceneChangeDetector sceneChangeDetector = mFrameProcessor.getSceneChangeDetector();
+        if(sceneChangeDetector != null) {
+            sceneChangeDetector.reset();
+        }
+    }
+
+    /**
+     * Timing of the results that were delivered last, or null if there were none yet. Read it
+     * from the result handler to get the timing of the results being handled.
+     */
+    public ResultTiming getLastResultTiming() {
+        return mLastResultTiming;
+    }
+
+    /**
+     * The check frames have to pass before they are decoded, which skips blurry and badly
+     * exposed frames. Null, the default, decodes every frame.
+     */
+    public void setFrameQualityGate(FrameQualityGate qualityGate) {
+        mFrameProcessor.setFrameQualityGate(qualityGate);
+    }
+
+    public FrameQualityGate getFrameQualityGate() {
+        return mFrameProcessor.getFrameQualityGate();
+    }
+
+    /**
+     * Skips decoding frames that look the same as the last decoded frame when nothing was found
+     * in it, e.g. while the device is pointed at an empty counter. Off by default.
+     */
+    public void setSceneChangeDetector(SceneChangeDetector sceneChangeDetector) {
+        mFrameProcessor.setSceneChangeDetector(sceneChangeDetector);
+    }
+
+    public SceneChangeDetector getSceneChangeDetector() {
+        return mFrameProcessor.getSceneChangeDetector();
+    }
+
+    /**
+     * Decodes only a few lines around the laser line instead of the whole framing rect, which
+     * is much cheaper when only 1D barcodes are scanned, and draws the laser on each of them.
+     * Pass null, the default, to decode the whole framing rect.
+     */
+    public void setScanLines(ScanLines scanLines) {
+        mFrameProcessor.setScanLines(scanLines);
+        mViewFinderView.setScanLines(scanLines);
+    }
+
+    public ScanLines getScanLines() {
+        return mFrameProcessor.getScanLines();
+    }
+
+    /** Frame counts and stage timings since the view was created or the metrics were reset. */
+    public ScannerMetrics getMetrics() {
+        return mFrameProcessor.getMetrics();
+    }
+
+    private void startDecodeThread() {
+        if(mDecodeThread == null) {
+            mDecodeThread = new HandlerThread(DECODE_THREAD_NAME, Process.THREAD_PRIORITY_DISPLAY);
+            mDecodeThread.start();
+            mDecodeHandler = new Handler(mDecodeThread.getLooper());
+        }
+    }
+
+    private void stopDecodeThread() {
+        if(mDecodeThread != null) {
+            mDecodeThread.quit();
+            mDecodeThread = null;
+            mDecodeHandler = null;
+        }
+        dropPendingFrame();
+    }
+
+    private void dropPendingFrame() {
+        byte[] pendingFrame;
+        synchronized (mFrameLock) {
+            pendingFrame = mPendingFrame;
+            mPendingFrame = null;
+            mDecodePosted = false;
+        }
+        if(pendingFrame != null) {
+            mFrameSource.releaseFrame(pendingFrame);
+        }
+    }
+
+    /**
+     * Runs on the main thread. Only hands the frame over to the decode thread and asks the
+     * camera for the next one, the actual decoding happens on the decode thread.
+     */
+    @Override
+    public void onFrame(FrameSource source, byte[] data, int width, int height, long timestamp) {
+        if(!mScanning || mDecodeHandler == null) {
+            source.releaseFrame(data);
+            return;
+        }
+
+        ScannerMetrics metrics = mFrameProcessor.getMetrics();
+        metrics.recordFrameReceived();
+        mFramesSinceScanStart++;
+        byte[] droppedFrame;
+        synchronized (mFrameLock) {
+            droppedFrame = mPendingFrame;
+            mPendingFrame = data;
+            mPendingWidth = width;
+            mPendingHeight = height;
+            mPendingTime = timestamp;
+            mPendingFrameNumber = mFramesSinceScanStart;
+            if(!mDecodePosted) {
+                mDecodePosted = true;
+                mDecodeHandler.post(mDecodeRunnable);
+            }
+        }
+        if(droppedFrame != null) {
+            metrics.recordFrameDropped();
+            source.releaseFrame(droppedFrame);
+        }
+        source.requestFrame();
+    }
+
+    private final Runnable mDecodeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            byte[] data;
+            int width;
+            int height;
+            long captureTime;
+            int frameNumber;
+            synchronized (mFrameLock) {
+                data = mPendingFrame;
+                width = mPendingWidth;
+                height = mPendingHeight;
+                captureTime = mPendingTime;
+                frameNumber = mPendingFrameNumber;
+                mPendingFrame = null;
+                mDecodePosted = false;
+            }
+            if(data == null) {
+                return;
+            }
+            mFrameProcessor.getMetrics().recordStage(ScannerMetrics.Stage.HANDOFF, System.nanoTime() - captureTime);
+            ScannerTrace.beginSection(ScannerTrace.DECODE_FRAME);
+            try {
+                if(mScanning && decodeFrame(data, width, height, captureTime, frameNumber) && !mContinuousScanning) {
+                    mScanning = false;
+                }
+            } finally {
+                ScannerTrace.endSection();
+            }
+            mFrameSource.releaseFrame(data);
+        }
+    };
+
+    protected void setFrameDecoder(FrameDecoder<T> frameDecoder) {
+        mFrameProcessor.setFrameDecoder(frameDecoder);
+    }
+
+    public FrameDecoder<T> getFrameDecoder() {
+        return mFrameProcessor.getFrameDecoder();
+    }
+
+    /** Whether the frame decoder should return every barcode in a frame or stop at the first. */
+    protected void setDecodeMultiple(boolean decodeMultiple) {
+        mFrameProcessor.setDecodeMultiple(decodeMultiple);
+    }
+
+    /**
+     * Called on the main thread with the barcodes found in a frame, never with an empty list.
+     * {@link #getLastResultTiming()} already returns their timing.
+     */
+    protected abstract void handleResults(List<T> results);
+
+    /**
+     * Runs on the decode thread: crops the frame to the framing rect, decodes it and delivers
+     * whatever was found.
+     *
+     * @return true if a barcode was found
+     */
+    private boolean decodeFrame(byte[] data, int width, int height, long captureTime, int frameNumber) {
+        Rect rect;
+        int rotation;
+        if(DisplayUtils.getScreenOrientation(getContext()) == Configuration.ORIENTATION_PORTRAIT) {
+            rotation = 90;
+            rect = getFramingRectInPreview(height, width);
+        } else {
+            rotation = 0;
+            rect = getFramingRectInPreview(width, height);
+        }
+        if(rect == null) {
+            return false;
+        }
+
+        long decodeStartTime = System.nanoTime();
+        List<T> results = mFrameProcessor.decode(data, width, height, rotation,
+                rect.left, rect.top, rect.width(), rect.height());
+        long decodeEndTime = System.nanoTime();
+        if(results == null) {
+            return false;
+        }
+
+        if(mContinuousScanning) {
+            mFrameProcessor.removeDuplicates(results, SystemClock.elapsedRealtime());
+            if(results.isEmpty()) {
+                return true;
+            }
+        }
+
+        deliverResults(Collections.unmodifiableList(results), captureTime, decodeStartTime, decodeEndTime, frameNumber);
+        return true;
+    }
+
+    /**
+     * Delivers results on the main thread. The camera is stopped first unless scanning is
+     * continuous, and the results are dropped if scanning was stopped or paused in the meantime.
+     */
+    private void deliverResults(final List<T> results, final long captureTime, final long decodeStartTime,
+                                final long decodeEndTime, final int frameNumber) {
+        final int scanGeneration = mScanGeneration;
+        final long scanStartTime = mScanStartTime;
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if(scanGeneration != mScanGeneration) {
+                    return;
+                }
+                long deliveryTime = System.nanoTime();
+                ScannerMetrics metrics = mFrameProcessor.getMetrics();
+                metrics.recordStage(ScannerMetrics.Stage.DISPATCH, deliveryTime - decodeEndTime);
+                metrics.recordResultDelivered(deliveryTime - captureTime,
+                        mFirstResultDelivered ? -1 : deliveryTime - scanStartTime);
+                mFirstResultDelivered = true;
+                mLastResultTiming = new ResultTiming(scanStartTime, captureTime, decodeStartTime,
+                        decodeEndTime, deliveryTime, frameNumber);
+                ScannerTrace.beginSection(ScannerTrace.DELIVER_RESULTS);
+                try {
+                    if(!mContinuousScanning) {
+                        stopCamera();
+                    }
+                    handleResults(results);
+                } finally {
+                    ScannerTrace.endSection();
+                }
+            }
+        });
+    }
+
+    /**
+     * Number of preview buffers that are allocated up front and reused for every frame, see
+     * {@link CameraPreview#setPreviewBufferCount}. Call before {@link #startCamera()}.
+     */
+    public void setPreviewBufferCount(int count) {
+        mPreview.setPreviewBufferCount(count);
     }
 
     public synchronized Rect getFramingRectInPreview(int width, int height) {
@@ -75,45 +443,26 @@ public abstract class BarcodeScannerView extends FrameLayout implements Camera.P
     }
 
     public void setFlash(boolean flag) {
-        if(mCamera != null && CameraUtils.isFlashSupported(mCamera)) {
-            Camera.Parameters parameters = mCamera.getParameters();
-            if(flag) {
-                if(parameters.getFlashMode().equals(Camera.Parameters.FLASH_MODE_TORCH)) {
-                    return;
-                }
-                parameters.setFlashMode(Camera.Parameters.FLASH_MODE_TORCH);
-            } else {
-                if(parameters.getFlashMode().equals(Camera.Parameters.FLASH_MODE_OFF)) {
-                    return;
-                }
-                parameters.setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
+        CameraSession session = mPreview.getCameraSession();
+        if(mCamera != null && session != null && session.isFlashSupported()) {
+            String flashMode = flag ? Camera.Parameters.FLASH_MODE_TORCH : Camera.Parameters.FLASH_MODE_OFF;
+            if(flashMode.equals(session.getFlashMode())) {
+                return;
             }
-            mCamera.setParameters(parameters);
+            mPreview.applyCameraParameters(new CameraParameterWriter().setFlashMode(flashMode));
         }
     }
 
     public boolean getFlash() {
-        if(mCamera != null && CameraUtils.isFlashSupported(mCamera)) {
-            Camera.Parameters parameters = mCamera.getParameters();
-            if(parameters.getFlashMode().equals(Camera.Parameters.FLASH_MODE_TORCH)) {
-                return true;
-            } else {
-                return false;
-            }
+        CameraSession session = mPreview.getCameraSession();
+        if(mCamera != null && session != null && session.isFlashSupported()) {
+            return session.isTorchOn();
         }
         return false;
     }
 
     public void toggleFlash() {
-        if(mCamera != null && CameraUtils.isFlashSupported(mCamera)) {
-            Camera.Parameters parameters = mCamera.getParameters();
-            if(parameters.getFlashMode().equals(Camera.Parameters.FLASH_MODE_TORCH)) {
-                parameters.setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
-            } else {
-                parameters.setFlashMode(Camera.Parameters.FLASH_MODE_TORCH);
-            }
-            mCamera.setParameters(parameters);
-        }
+        setFlash(!getFlash());
     }
 
     public void setAutoFocus(boolean state) {
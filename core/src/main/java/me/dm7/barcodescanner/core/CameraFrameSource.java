@@ -0,0 +1,48 @@
+package me.dm7.barcodescanner.core;
+
+import android.hardware.Camera;
+
+/**
+ * Delivers the preview frames of the camera attached to a {@link CameraPreview}. Opening the
+ * camera and attaching it with this source as the preview callback is up to the owner.
+ */
+public class CameraFrameSource implements FrameSource, Camera.PreviewCallback {
+    private final CameraPreview mPreview;
+    private volatile Callback mCallback;
+
+    public CameraFrameSource(CameraPreview preview) {
+        mPreview = preview;
+    }
+
+    @Override
+    public void start(Callback callback) {
+        mCallback = callback;
+    }
+
+    @Override
+    public void stop() {
+        mCallback = null;
+    }
+
+    @Override
+    public void requestFrame() {
+        mPreview.requestPreviewFrame();
+    }
+
+    @Override
+    public void releaseFrame(byte[] data) {
+        mPreview.recycleBuffer(data);
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        long timestamp = System.nanoTime();
+        Callback callback = mCallback;
+        CameraSession session = mPreview.getCameraSession();
+        if(callback == null || session == null) {
+            releaseFrame(data);
+            return;
+        }
+        callback.onFrame(this, data, session.getPreviewWidth(), session.getPreviewHeight(), timestamp);
+    }
+}
@@ -0,0 +1,52 @@
+package me.dm7.barcodescanner.core;
+
+import android.hardware.Camera;
+
+/**
+ * Collects several parameter changes and writes them to the camera with a single
+ * {@link Camera#getParameters()} / {@link Camera#setParameters} round trip.
+ */
+public class CameraParameterWriter {
+    private int mPreviewWidth;
+    private int mPreviewHeight;
+    private String mFlashMode;
+    private String mFocusMode;
+
+    public CameraParameterWriter setPreviewSize(int width, int height) {
+        mPreviewWidth = width;
+        mPreviewHeight = height;
+        return this;
+    }
+
+    public CameraParameterWriter setFlashMode(String flashMode) {
+        mFlashMode = flashMode;
+        return this;
+    }
+
+    public CameraParameterWriter setFocusMode(String focusMode) {
+        mFocusMode = focusMode;
+        return this;
+    }
+
+    public boolean hasChanges() {
+        return mPreviewWidth > 0 || mFlashMode != null || mFocusMode != null;
+    }
+
+    /** Applies all pending changes and returns a snapshot of the resulting parameters. */
+    public CameraSession apply(Camera camera) {
+        Camera.Parameters parameters = camera.getParameters();
+        if(hasChanges()) {
+            if(mPreviewWidth > 0) {
+                parameters.setPreviewSize(mPreviewWidth, mPreviewHeight);
+            }
+            if(mFlashMode != null) {
+                parameters.setFlashMode(mFlashMode);
+            }
+            if(mFocusMode != null) {
+                parameters.setFocusMode(mFocusMode);
+            }
+            camera.setParameters(parameters);
+        }
+        return new CameraSession(parameters);
+    }
+}
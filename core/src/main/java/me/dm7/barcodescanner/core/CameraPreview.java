@@ -17,6 +17,7 @@ import java.util.List;
 
 public class CameraPreview extends SurfaceView implements SurfaceHolder.Callback {
     private static final String TAG = "CameraPreview";
+    private static final int DEFAULT_PREVIEW_BUFFER_COUNT = 3;
 
     private Camera mCamera;
     private Handler mAutoFocusHandler;
@@ -24,6 +25,12 @@ public class CameraPreview extends SurfaceView implements SurfaceHolder.Callback
     private boolean mAutoFocus = true;
     private boolean mSurfaceCreated = false;
     private Camera.PreviewCallback mPreviewCallback;
+    private int mPreviewBufferCount = DEFAULT_PREVIEW_BUFFER_COUNT;
+    private volatile PreviewBufferPool mBufferPool;
+    private volatile CameraSession mCameraSession;
+    // Identifies the autofocus run shown as an async trace section, if one is running.
+    private int mAutoFocusCookie;
+    private boolean mAutoFocusTraced;
 
     public CameraPreview(Context context) {
         super(context);
@@ -34,9 +41,46 @@ public class CameraPreview extends SurfaceView implements SurfaceHolder.Callback
     }
 
     public void setCamera(Camera camera, Camera.PreviewCallback previewCallback) {
+        if(mBufferPool != null) {
+            mBufferPool.detach();
+        }
         mCamera = camera;
         mPreviewCallback = previewCallback;
         mAutoFocusHandler = new Handler();
+        mCameraSession = camera != null ? new CameraSession(camera.getParameters()) : null;
+    }
+
+    /**
+     * Returns the parameters snapshot of the current camera, or null if there is none. Safe to
+     * call from any thread.
+     */
+    public CameraSession getCameraSession() {
+        return mCameraSession;
+    }
+
+    /** Writes the given changes to the camera and refreshes {@link #getCameraSession()}. */
+    public void applyCameraParameters(CameraParameterWriter writer) {
+        if(mCamera != null) {
+            ScannerTrace.beginSection(ScannerTrace.SET_PARAMETERS);
+            try {
+                mCameraSession = writer.apply(mCamera);
+            } finally {
+                ScannerTrace.endSection();
+            }
+        }
+    }
+
+    /**
+     * Number of preview buffers that are allocated once and handed to the camera with
+     * {@link Camera#addCallbackBuffer}. Pass 0 to let the camera allocate a new buffer for
+     * every frame instead. Takes effect the next time the preview is started.
+     */
+    public void setPreviewBufferCount(int count) {
+        mPreviewBufferCount = count;
+    }
+
+    public int getPreviewBufferCount() {
+        return mPreviewBufferCount;
     }
 
     public void initCameraPreview() {
@@ -73,42 +117,106 @@ public class CameraPreview extends SurfaceView implements SurfaceHolder.Callback
 
     public void showCameraPreview() {
         if(mCamera != null) {
+            ScannerTrace.beginSection(ScannerTrace.START_PREVIEW);
             try {
                 mPreviewing = true;
                 setupCameraParameters();
                 mCamera.setPreviewDisplay(getHolder());
                 mCamera.setDisplayOrientation(getDisplayOrientation());
-                mCamera.setOneShotPreviewCallback(mPreviewCallback);
+                setupPreviewCallback();
                 mCamera.startPreview();
                 if(mAutoFocus) {
-                    mCamera.autoFocus(autoFocusCB);
+                    autoFocus();
                 }
             } catch (Exception e) {
                 Log.e(TAG, e.toString(), e);
+            } finally {
+                ScannerTrace.endSection();
             }
         }
     }
 
     public void stopCameraPreview() {
         if(mCamera != null) {
+            ScannerTrace.beginSection(ScannerTrace.STOP_PREVIEW);
             try {
                 mPreviewing = false;
-                mCamera.cancelAutoFocus();
-                mCamera.setOneShotPreviewCallback(null);
+                if(mBufferPool != null) {
+                    mBufferPool.detach();
+                }
+                cancelAutoFocus();
+                if(mBufferPool != null) {
+                    mCamera.setPreviewCallbackWithBuffer(null);
+                } else {
+                    mCamera.setOneShotPreviewCallback(null);
+                }
                 mCamera.stopPreview();
             } catch(Exception e) {
                 Log.e(TAG, e.toString(), e);
+            } finally {
+                ScannerTrace.endSection();
             }
         }
     }
 
     public void setupCameraParameters() {
         Camera.Size optimalSize = getOptimalPreviewSize();
-        Camera.Parameters parameters = mCamera.getParameters();
-        parameters.setPreviewSize(optimalSize.width, optimalSize.height);
-        mCamera.setParameters(parameters);
+        applyCameraParameters(new CameraParameterWriter().setPreviewSize(optimalSize.width, optimalSize.height));
+    }
+
+    private void setupPreviewCallback() {
+        int bufferSize = mCameraSession.getPreviewBufferSize();
+        // Buffers can only be sized for formats of known size, the others get one shot callbacks.
+        if(mPreviewBufferCount <= 0 || bufferSize <= 0) {
+            if(mBufferPool != null) {
+                mBufferPool.detach();
+            }
+            mBufferPool = null;
+            mCamera.setOneShotPreviewCallback(mPreviewCallback);
+            return;
+        }
+
+        if(mBufferPool == null || mBufferPool.getCount() != mPreviewBufferCount || mBufferPool.getBufferSize() != bufferSize) {
+            mBufferPool = new PreviewBufferPool(mPreviewBufferCount, bufferSize);
+        }
+        mCamera.setPreviewCallbackWithBuffer(mBufferCallback);
+        mBufferPool.attach(mCamera);
+    }
+
+    /**
+     * Asks the camera for the next preview frame. Only needed without a buffer pool, since
+     * one shot callbacks have to be re-armed after every frame.
+     */
+    public void requestPreviewFrame() {
+        if(mCamera != null && mPreviewing && mBufferPool == null) {
+            mCamera.setOneShotPreviewCallback(mPreviewCallback);
+        }
     }
 
+    /**
+     * Returns a frame delivered through the preview callback to the buffer pool. Safe to call
+     * from any thread, buffers that are not part of the current pool are ignored.
+     */
+    public void recycleBuffer(byte[] buffer) {
+        PreviewBufferPool bufferPool = mBufferPool;
+        if(bufferPool != null) {
+            bufferPool.recycle(buffer);
+        }
+    }
+
+    private final Camera.PreviewCallback mBufferCallback = new Camera.PreviewCallback() {
+        @Override
+        public void onPreviewFrame(byte[] data, Camera camera) {
+            PreviewBufferPool bufferPool = mBufferPool;
+            if(bufferPool != null) {
+                bufferPool.markInUse(data);
+            }
+            if(mPreviewCallback != null) {
+                mPreviewCallback.onPreviewFrame(data, camera);
+            }
+        }
+    };
+
     public int getDisplayOrientation() {
         Camera.CameraInfo info = new Camera.CameraInfo();
         Camera.getCameraInfo(Camera.CameraInfo.CAMERA_FACING_BACK, info);
@@ -189,18 +297,38 @@ public class CameraPreview extends SurfaceView implements SurfaceHolder.Callback
             mAutoFocus = state;
             if(mAutoFocus) {
                 Log.v(TAG, "Starting autofocus");
-                mCamera.autoFocus(autoFocusCB);
+                autoFocus();
             } else {
                 Log.v(TAG, "Cancelling autofocus");
-                mCamera.cancelAutoFocus();
+                cancelAutoFocus();
             }
         }
     }
 
+    private void autoFocus() {
+        mCamera.autoFocus(autoFocusCB);
+        endAutoFocusTrace();
+        mAutoFocusCookie++;
+        mAutoFocusTraced = true;
+        ScannerTrace.beginAsyncSection(ScannerTrace.AUTO_FOCUS, mAutoFocusCookie);
+    }
+
+    private void cancelAutoFocus() {
+        mCamera.cancelAutoFocus();
+        endAutoFocusTrace();
+    }
+
+    private void endAutoFocusTrace() {
+        if(mAutoFocusTraced) {
+            mAutoFocusTraced = false;
+            ScannerTrace.endAsyncSection(ScannerTrace.AUTO_FOCUS, mAutoFocusCookie);
+        }
+    }
+
     private Runnable doAutoFocus = new Runnable() {
         public void run() {
             if(mCamera != null && mPreviewing && mAutoFocus && mSurfaceCreated) {
-                mCamera.autoFocus(autoFocusCB);
+                autoFocus();
             }
         }
     };
@@ -208,6 +336,7 @@ public class CameraPreview extends SurfaceView implements SurfaceHolder.Callback
     // Mimic continuous auto-focusing
     Camera.AutoFocusCallback autoFocusCB = new Camera.AutoFocusCallback() {
         public void onAutoFocus(boolean success, Camera camera) {
+            endAutoFocusTrace();
             mAutoFocusHandler.postDelayed(doAutoFocus, 1000);
         }
     };
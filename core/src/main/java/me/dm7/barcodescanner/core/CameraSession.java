@@ -0,0 +1,94 @@
+package me.dm7.barcodescanner.core;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the camera parameters the scanner needs while previewing. Taken once
+ * when the preview is set up (and after every {@link CameraParameterWriter#apply}) so the
+ * per frame path never has to call {@link Camera#getParameters()}.
+ */
+public class CameraSession {
+    private final int mPreviewWidth;
+    private final int mPreviewHeight;
+    private final int mPreviewFormat;
+    private final boolean mFlashSupported;
+    private final String mFlashMode;
+    private final String mFocusMode;
+    private final List<String> mSupportedFocusModes;
+
+    public CameraSession(Camera.Parameters parameters) {
+        Camera.Size previewSize = parameters.getPreviewSize();
+        mPreviewWidth = previewSize.width;
+        mPreviewHeight = previewSize.height;
+        mPreviewFormat = parameters.getPreviewFormat();
+        mFlashSupported = CameraUtils.isFlashSupported(parameters);
+        mFlashMode = parameters.getFlashMode();
+        mFocusMode = parameters.getFocusMode();
+
+        List<String> focusModes = parameters.getSupportedFocusModes();
+        if(focusModes == null) {
+            mSupportedFocusModes = Collections.emptyList();
+        } else {
+            mSupportedFocusModes = Collections.unmodifiableList(new ArrayList<String>(focusModes));
+        }
+    }
+
+    public int getPreviewWidth() {
+        return mPreviewWidth;
+    }
+
+    public int getPreviewHeight() {
+        return mPreviewHeight;
+    }
+
+    public int getPreviewFormat() {
+        return mPreviewFormat;
+    }
+
+    /**
+     * Size in bytes of a single preview frame in the negotiated size and format, or -1 if the
+     * format's size is unknown.
+     */
+    public int getPreviewBufferSize() {
+        if(mPreviewFormat == ImageFormat.YV12) {
+            // The planes' rows are padded to 16 bytes, see Camera.Parameters#setPreviewFormat.
+            int yStride = (mPreviewWidth + 15) / 16 * 16;
+            int uvStride = (yStride / 2 + 15) / 16 * 16;
+            return yStride * mPreviewHeight + uvStride * mPreviewHeight / 2 * 2;
+        }
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(mPreviewFormat);
+        if(bitsPerPixel <= 0) {
+            return -1;
+        }
+        return mPreviewWidth * mPreviewHeight * bitsPerPixel / 8;
+    }
+
+    public boolean isFlashSupported() {
+        return mFlashSupported;
+    }
+
+    public String getFlashMode() {
+        return mFlashMode;
+    }
+
+    public boolean isTorchOn() {
+        return Camera.Parameters.FLASH_MODE_TORCH.equals(mFlashMode);
+    }
+
+    public String getFocusMode() {
+        return mFocusMode;
+    }
+
+    public List<String> getSupportedFocusModes() {
+        return mSupportedFocusModes;
+    }
+
+    public boolean isFocusModeSupported(String focusMode) {
+        return mSupportedFocusModes.contains(focusMode);
+    }
+}
@@ -18,19 +18,20 @@ public class CameraUtils {
     }
 
     public static boolean isFlashSupported(Camera camera) {
-        /* Credits: Top answer at http://stackoverflow.com/a/19599365/868173 */
         if (camera != null) {
-            Camera.Parameters parameters = camera.getParameters();
+            return isFlashSupported(camera.getParameters());
+        }
+        return false;
+    }
 
-            if (parameters.getFlashMode() == null) {
-                return false;
-            }
+    public static boolean isFlashSupported(Camera.Parameters parameters) {
+        /* Credits: Top answer at http://stackoverflow.com/a/19599365/868173 */
+        if (parameters.getFlashMode() == null) {
+            return false;
+        }
 
-            List<String> supportedFlashModes = parameters.getSupportedFlashModes();
-            if (supportedFlashModes == null || supportedFlashModes.isEmpty() || supportedFlashModes.size() == 1 && supportedFlashModes.get(0).equals(Camera.Parameters.FLASH_MODE_OFF)) {
-                return false;
-            }
-        } else {
+        List<String> supportedFlashModes = parameters.getSupportedFlashModes();
+        if (supportedFlashModes == null || supportedFlashModes.isEmpty() || supportedFlashModes.size() == 1 && supportedFlashModes.get(0).equals(Camera.Parameters.FLASH_MODE_OFF)) {
             return false;
         }
 
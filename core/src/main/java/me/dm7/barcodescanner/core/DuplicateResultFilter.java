@@ -0,0 +1,83 @@
+package me.dm7.barcodescanner.core;
+
+/**
+ * Remembers recently delivered results by (format, contents) so the same barcode is not
+ * delivered again on every frame while it stays in view. An entry expires once the barcode
+ * has not been seen for the timeout, and the least recently seen entry is evicted when the
+ * filter is full.
+ *
+ * Entries are kept in plain arrays and compared in place, so checking a result does not
+ * allocate.
+ */
+public class DuplicateResultFilter {
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final long DEFAULT_TIMEOUT = 2000;
+
+    private final Object[] mFormats;
+    private final String[] mContents;
+    private final long[] mLastSeen;
+    private int mSize;
+    private long mTimeout;
+
+    public DuplicateResultFilter() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIMEOUT);
+    }
+
+    public DuplicateResultFilter(int capacity, long timeout) {
+        mFormats = new Object[capacity];
+        mContents = new String[capacity];
+        mLastSeen = new long[capacity];
+        mTimeout = timeout;
+    }
+
+    /** Time in milliseconds a barcode has to be out of view to be delivered again, 0 disables the filter. */
+    public synchronized void setTimeout(long timeout) {
+        mTimeout = timeout;
+    }
+
+    public synchronized long getTimeout() {
+        return mTimeout;
+    }
+
+    /**
+     * Records that a result was seen at the given time.
+     *
+     * @param now current time in milliseconds, from a monotonic clock
+     * @return true if the same result was already seen within the timeout
+     */
+    public synchronized boolean isDuplicate(Object format, String contents, long now) {
+        if (mTimeout <= 0) {
+            return false;
+        }
+
+        int oldest = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (equal(format, mFormats[i]) && equal(contents, mContents[i])) {
+                boolean duplicate = now - mLastSeen[i] < mTimeout;
+                mLastSeen[i] = now;
+                return duplicate;
+            }
+            if (mLastSeen[i] < mLastSeen[oldest]) {
+                oldest = i;
+            }
+        }
+
+        int slot = mSize < mFormats.length ? mSize++ : oldest;
+        mFormats[slot] = format;
+        mContents[slot] = contents;
+        mLastSeen[slot] = now;
+        return false;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mFormats[i] = null;
+            mContents[i] = null;
+        }
+        mSize = 0;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,26 @@
+package me.dm7.barcodescanner.core;
+
+import java.util.List;
+
+/**
+ * The part of the scanning pipeline that is specific to a barcode library. Everything else,
+ * from camera buffers and threading to cropping and result delivery, is handled by
+ * {@link BarcodeScannerView}.
+ *
+ * @param <T> the result type of the barcode library
+ */
+public interface FrameDecoder<T> {
+    /**
+     * Decodes the crop region of a frame. Called on the decode thread, and must not hold on
+     * to the frame or its data after returning.
+     *
+     * @param multiple whether to return every barcode found, or stop at the first one
+     * @return a modifiable list of the barcodes found, or null or an empty list if there are none
+     */
+    public List<T> decode(PreviewFrame frame, boolean multiple);
+
+    /** Returns the format of a result, used together with the contents to detect duplicates. */
+    public Object getFormat(T result);
+
+    public String getContents(T result);
+}
@@ -0,0 +1,155 @@
+package me.dm7.barcodescanner.core;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The decode step of the scanning pipeline without any Android dependencies: wraps a frame
+ * and its crop in a {@link PreviewFrame}, turns it away if the {@link FrameQualityGate} says it
+ * cannot be read or the {@link SceneChangeDetector} says nothing changed, runs the
+ * {@link FrameDecoder} on it and filters duplicate results. {@link BarcodeScannerView} runs one
+ * on its decode thread, and the same pipeline can be fed from a {@link ReplayFrameSource} on a
+ * desktop JVM.
+ *
+ * Not thread safe, except for the setters, so frames have to be processed one at a time.
+ *
+ * @param <T> the result type of the barcode library
+ */
+public class FrameProcessor<T> {
+    private final PreviewFrame mPreviewFrame = new PreviewFrame();
+    private final DuplicateResultFilter mDuplicateResultFilter = new DuplicateResultFilter();
+    private final ScannerMetrics mMetrics = new ScannerMetrics();
+    private volatile FrameDecoder<T> mFrameDecoder;
+    private volatile boolean mDecodeMultiple;
+    private volatile FrameQualityGate mQualityGate;
+    private volatile SceneChangeDetector mSceneChangeDetector;
+    private volatile ScanLines mScanLines;
+
+    public FrameProcessor() {
+    }
+
+    public FrameProcessor(FrameDecoder<T> frameDecoder) {
+        mFrameDecoder = frameDecoder;
+    }
+
+    public void setFrameDecoder(FrameDecoder<T> frameDecoder) {
+        mFrameDecoder = frameDecoder;
+        // A new decoder, e.g. for other formats, may find something in the same scene.
+        SceneChangeDetector sceneChangeDetector = mSceneChangeDetector;
+        if(sceneChangeDetector != null) {
+            sceneChangeDetector.reset();
+        }
+    }
+
+    public FrameDecoder<T> getFrameDecoder() {
+        return mFrameDecoder;
+    }
+
+    /** Whether to return every barcode in a frame or stop at the first. */
+    public void setDecodeMultiple(boolean decodeMultiple) {
+        mDecodeMultiple = decodeMultiple;
+    }
+
+    public boolean isDecodeMultiple() {
+        return mDecodeMultiple;
+    }
+
+    /**
+     * The check that frames have to pass before they are decoded, or null, the default, to
+     * decode every frame.
+     */
+    public void setFrameQualityGate(FrameQualityGate qualityGate) {
+        mQualityGate = qualityGate;
+    }
+
+    public FrameQualityGate getFrameQualityGate() {
+        return mQualityGate;
+    }
+
+    /**
+     * Skips frames that look the same as the last decoded frame when nothing was found in it,
+     * or null to decode those as well, which is the default.
+     */
+    public void setSceneChangeDetector(SceneChangeDetector sceneChangeDetector) {
+        mSceneChangeDetector = sceneChangeDetector;
+    }
+
+    public SceneChangeDetector getSceneChangeDetector() {
+        return mSceneChangeDetector;
+    }
+
+    /** The lines to decode instead of the whole crop region, or null, the default, for all of it. */
+    public void setScanLines(ScanLines scanLines) {
+        mScanLines = scanLines;
+    }
+
+    public ScanLines getScanLines() {
+        return mScanLines;
+    }
+
+    public DuplicateResultFilter getDuplicateResultFilter() {
+        return mDuplicateResultFilter;
+    }
+
+    public ScannerMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Decodes the crop region of a frame, see {@link PreviewFrame#set} for the arguments.
+     *
+     * @return a modifiable list of the barcodes found, or null if there are none
+     */
+    public List<T> decode(byte[] data, int width, int height, int rotation,
+                          int cropLeft, int cropTop, int cropWidth, int cropHeight) {
+        FrameDecoder<T> frameDecoder = mFrameDecoder;
+        if(frameDecoder == null) {
+            return null;
+        }
+        PreviewFrame frame = mPreviewFrame;
+        frame.set(data, width, height, rotation, cropLeft, cropTop, cropWidth, cropHeight);
+        frame.setScanLines(mScanLines);
+
+        FrameQualityGate qualityGate = mQualityGate;
+        SceneChangeDetector sceneChangeDetector = mSceneChangeDetector;
+        if(qualityGate != null || sceneChangeDetector != null) {
+            long gateStart = System.nanoTime();
+            FrameQualityGate.Verdict verdict = qualityGate != null ? qualityGate.check(frame) : FrameQualityGate.Verdict.ACCEPT;
+            boolean unchanged = verdict == FrameQualityGate.Verdict.ACCEPT && sceneChangeDetector != null
+                    && !sceneChangeDetector.shouldDecode(frame);
+            mMetrics.recordFrameChecked(verdict, unchanged, System.nanoTime() - gateStart);
+            if(verdict != FrameQualityGate.Verdict.ACCEPT || unchanged) {
+                return null;
+            }
+        }
+
+        long start = System.nanoTime();
+        List<T> results = frameDecoder.decode(frame, mDecodeMultiple);
+        boolean found = results != null && !results.isEmpty();
+        if(sceneChangeDetector != null) {
+            sceneChangeDetector.setLastDecode(found, frame.isFinalAttempt());
+        }
+        mMetrics.recordFrameDecoded(frame.getCropTime(), frame.getBinarizeTime(), System.nanoTime() - start,
+                frame.getDecodeTier(), frame.getBinarizer(), found);
+        return found ? results : null;
+    }
+
+    /**
+     * Removes the results that were already seen within the duplicate result timeout.
+     *
+     * @param now the current time in milliseconds, from a monotonic clock
+     */
+    public void removeDuplicates(List<T> results, long now) {
+        FrameDecoder<T> frameDecoder = mFrameDecoder;
+        if(frameDecoder == null) {
+            return;
+        }
+        Iterator<T> iterator = results.iterator();
+        while(iterator.hasNext()) {
+            T result = iterator.next();
+            if(mDuplicateResultFilter.isDuplicate(frameDecoder.getFormat(result), frameDecoder.getContents(result), now)) {
+                iterator.remove();
+            }
+        }
+    }
+}
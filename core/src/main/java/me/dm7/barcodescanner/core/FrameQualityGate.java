@@ -0,0 +1,140 @@
+package me.dm7.barcodescanner.core;
+
+/**
+ * A cheap check run before a frame is decoded, which turns away frames that are too blurry or
+ * badly exposed to contain a readable barcode, e.g. while autofocus is hunting. Looks at about
+ * 64x64 evenly spaced pixels of the crop region, so it takes tens of microseconds.
+ *
+ * Sharpness is measured in each cell of an 8x8 grid over the crop region as the gradient,
+ * summed over both directions, that the steepest 4 of the cell's samples reach, from 0 to 510.
+ * The frame's sharpness is that of its sharpest cell, so a small barcode on a plain background
+ * counts as much as one that fills the crop. A sharp barcode edge reaches roughly its
+ * contrast, e.g. 100 or more for black on white, a blurred one a fraction of it. Flat frames
+ * with nothing in them score close to 0 and are turned away as well.
+ *
+ * Keeps the steepest samples of a cell between frames, so an instance must only be used by one
+ * thread.
+ */
+public class FrameQualityGate {
+    public static final int DEFAULT_MIN_SHARPNESS = 16;
+    public static final int DEFAULT_MIN_BRIGHTNESS = 16;
+    public static final int DEFAULT_MAX_BRIGHTNESS = 240;
+
+    private static final int SAMPLES_PER_SIDE = 64;
+    private static final int CELLS_PER_SIDE = 8;
+    private static final int SHARP_SAMPLES_PER_CELL = 4;
+
+    public enum Verdict {
+        ACCEPT,
+        TOO_DARK,
+        TOO_BRIGHT,
+        TOO_BLURRY
+    }
+
+    // The steepest gradients of the current cell, steepest first.
+    private final int[] mSteepest = new int[SHARP_SAMPLES_PER_CELL];
+    private volatile int mMinSharpness = DEFAULT_MIN_SHARPNESS;
+    private volatile int mMinBrightness = DEFAULT_MIN_BRIGHTNESS;
+    private volatile int mMaxBrightness = DEFAULT_MAX_BRIGHTNESS;
+    private int mLastSharpness;
+    private int mLastBrightness;
+
+    /** Frames whose sharpness is below this are turned away, 0 disables the check. */
+    public void setMinSharpness(int minSharpness) {
+        mMinSharpness = minSharpness;
+    }
+
+    public int getMinSharpness() {
+        return mMinSharpness;
+    }
+
+    /**
+     * Frames whose average brightness, from 0 to 255, is outside this range are turned away.
+     * Pass 0 and 255 to disable the check.
+     */
+    public void setBrightnessRange(int minBrightness, int maxBrightness) {
+        mMinBrightness = minBrightness;
+        mMaxBrightness = maxBrightness;
+    }
+
+    public int getMinBrightness() {
+        return mMinBrightness;
+    }
+
+    public int getMaxBrightness() {
+        return mMaxBrightness;
+    }
+
+    /** Sharpness of the last frame checked, 0 if it was turned away for its brightness. */
+    public int getLastSharpness() {
+        return mLastSharpness;
+    }
+
+    public int getLastBrightness() {
+        return mLastBrightness;
+    }
+
+    public Verdict check(PreviewFrame frame) {
+        byte[] data = frame.getData();
+        int stride = frame.getWidth();
+        int left = frame.getSensorCropLeft();
+        int top = frame.getSensorCropTop();
+        int width = frame.getSensorCropWidth();
+        int height = frame.getSensorCropHeight();
+        mLastSharpness = 0;
+        mLastBrightness = 0;
+        if (width < 3 || height < 3) {
+            return Verdict.ACCEPT;
+        }
+
+        // Central differences need a neighbour on every side, so the outermost pixels are skipped.
+        int innerWidth = width - 2;
+        int innerHeight = height - 2;
+        int stepX = Math.max(1, innerWidth / SAMPLES_PER_SIDE);
+        int stepY = Math.max(1, innerHeight / SAMPLES_PER_SIDE);
+        int[] steepest = mSteepest;
+        long sum = 0;
+        int count = 0;
+        int sharpness = 0;
+        for (int cellY = 0; cellY < CELLS_PER_SIDE; cellY++) {
+            int y0 = top + 1 + innerHeight * cellY / CELLS_PER_SIDE;
+            int y1 = top + 1 + innerHeight * (cellY + 1) / CELLS_PER_SIDE;
+            for (int cellX = 0; cellX < CELLS_PER_SIDE; cellX++) {
+                int x0 = left + 1 + innerWidth * cellX / CELLS_PER_SIDE;
+                int x1 = left + 1 + innerWidth * (cellX + 1) / CELLS_PER_SIDE;
+                for (int i = 0; i < steepest.length; i++) {
+                    steepest[i] = 0;
+                }
+                for (int y = y0; y < y1; y += stepY) {
+                    for (int index = y * stride + x0, end = y * stride + x1; index < end; index += stepX) {
+                        sum += data[index] & 0xFF;
+                        count++;
+                        int gradient = Math.abs((data[index + 1] & 0xFF) - (data[index - 1] & 0xFF))
+                                + Math.abs((data[index + stride] & 0xFF) - (data[index - stride] & 0xFF));
+                        if (gradient > steepest[steepest.length - 1]) {
+                            int i = steepest.length - 1;
+                            for (; i > 0 && gradient > steepest[i - 1]; i--) {
+                                steepest[i] = steepest[i - 1];
+                            }
+                            steepest[i] = gradient;
+                        }
+                    }
+                }
+                if (steepest[steepest.length - 1] > sharpness) {
+                    sharpness = steepest[steepest.length - 1];
+                }
+            }
+        }
+
+        mLastBrightness = (int) (sum / count);
+        if (mLastBrightness < mMinBrightness) {
+            return Verdict.TOO_DARK;
+        }
+        if (mLastBrightness > mMaxBrightness) {
+            return Verdict.TOO_BRIGHT;
+        }
+
+        mLastSharpness = sharpness;
+        return sharpness < mMinSharpness ? Verdict.TOO_BLURRY : Verdict.ACCEPT;
+    }
+}
@@ -0,0 +1,35 @@
+package me.dm7.barcodescanner.core;
+
+/**
+ * Where preview frames come from. {@link CameraFrameSource} delivers the frames of a live
+ * camera, {@link ReplayFrameSource} streams recorded frames from disk so the decode pipeline
+ * can run on a desktop JVM.
+ *
+ * Frames are handed out in buffers owned by the source. A callback owns a buffer from
+ * {@link Callback#onFrame} until it gives it back with {@link #releaseFrame}, and the source
+ * may stop delivering frames while all of its buffers are out.
+ */
+public interface FrameSource {
+    public interface Callback {
+        /**
+         * Called with every frame, on a thread chosen by the source.
+         *
+         * @param data the frame, luminance plane first
+         * @param timestamp when the frame arrived from the camera or file, a {@link System#nanoTime()} value
+         */
+        public void onFrame(FrameSource source, byte[] data, int width, int height, long timestamp);
+    }
+
+    public void start(Callback callback);
+
+    public void stop();
+
+    /**
+     * Asks for the next frame. Sources that keep delivering frames as long as buffers are
+     * released ignore this.
+     */
+    public void requestFrame();
+
+    /** Gives a buffer received in {@link Callback#onFrame} back to the source. Safe to call from any thread. */
+    public void releaseFrame(byte[] data);
+}
@@ -0,0 +1,70 @@
+package me.dm7.barcodescanner.core;
+
+import android.hardware.Camera;
+
+/**
+ * A fixed set of preview buffers for {@link Camera#setPreviewCallbackWithBuffer}. Keeps track of
+ * which buffers were handed out to the app so a preview restart never queues a buffer that is
+ * still being decoded.
+ */
+class PreviewBufferPool {
+    private final byte[][] mBuffers;
+    private final boolean[] mInUse;
+    private Camera mCamera;
+
+    PreviewBufferPool(int count, int bufferSize) {
+        mBuffers = new byte[count][bufferSize];
+        mInUse = new boolean[count];
+    }
+
+    int getCount() {
+        return mBuffers.length;
+    }
+
+    int getBufferSize() {
+        return mBuffers[0].length;
+    }
+
+    /** Queues every buffer that is not currently held by the app with the given camera. */
+    synchronized void attach(Camera camera) {
+        mCamera = camera;
+        for (int i = 0; i < mBuffers.length; i++) {
+            if (!mInUse[i]) {
+                camera.addCallbackBuffer(mBuffers[i]);
+            }
+        }
+    }
+
+    /** Stops handing recycled buffers to the camera, e.g. because the preview stopped. */
+    synchronized void detach() {
+        mCamera = null;
+    }
+
+    synchronized void markInUse(byte[] buffer) {
+        int index = indexOf(buffer);
+        if (index >= 0) {
+            mInUse[index] = true;
+        }
+    }
+
+    /** Gives a buffer back to the pool, and to the camera if one is attached. */
+    synchronized void recycle(byte[] buffer) {
+        int index = indexOf(buffer);
+        if (index < 0 || !mInUse[index]) {
+            return;
+        }
+        mInUse[index] = false;
+        if (mCamera != null) {
+            mCamera.addCallbackBuffer(buffer);
+        }
+    }
+
+    private int indexOf(byte[] buffer) {
+        for (int i = 0; i < mBuffers.length; i++) {
+            if (mBuffers[i] == buffer) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
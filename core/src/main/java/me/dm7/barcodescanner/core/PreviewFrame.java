@@ -0,0 +1,204 @@
+package me.dm7.barcodescanner.core;
+
+/**
+ * A preview frame as handed to a {@link FrameDecoder}: the frame as delivered by the camera,
+ * the rotation it is shown with, and the region to decode. The same instance is reused for
+ * every frame on the decode thread, so decoders must not keep a reference to it.
+ */
+public class PreviewFrame {
+    private byte[] mData;
+    private int mWidth;
+    private int mHeight;
+    private int mRotation;
+    private int mCropLeft;
+    private int mCropTop;
+    private int mCropWidth;
+    private int mCropHeight;
+    private int mSensorCropLeft;
+    private int mSensorCropTop;
+    private int mSensorCropWidth;
+    private int mSensorCropHeight;
+    private long mCropTime;
+    private long mBinarizeTime;
+    private int mDecodeTier;
+    private String mBinarizer;
+    private boolean mFinalAttempt;
+    private ScanLines mScanLines;
+
+    /**
+     * @param data the frame as delivered by the camera, luminance plane first
+     * @param width width of the frame as delivered by the camera
+     * @param height height of the frame as delivered by the camera
+     * @param rotation clockwise rotation the frame is shown with, one of 0, 90, 180 or 270
+     * @param cropLeft left edge of the region to decode, in rotated coordinates
+     * @param cropTop top edge of the region to decode, in rotated coordinates
+     * @param cropWidth width of the region to decode, in rotated coordinates
+     * @param cropHeight height of the region to decode, in rotated coordinates
+     */
+    public void set(byte[] data, int width, int height, int rotation,
+                    int cropLeft, int cropTop, int cropWidth, int cropHeight) {
+        mData = data;
+        mWidth = width;
+        mHeight = height;
+        mRotation = rotation;
+        mCropLeft = cropLeft;
+        mCropTop = cropTop;
+        mCropWidth = cropWidth;
+        mCropHeight = cropHeight;
+        mCropTime = 0;
+        mBinarizeTime = 0;
+        mDecodeTier = 0;
+        mBinarizer = null;
+        mFinalAttempt = true;
+        mScanLines = null;
+
+        switch (rotation) {
+            case 90:
+                mSensorCropLeft = cropTop;
+                mSensorCropTop = height - cropLeft - cropWidth;
+                mSensorCropWidth = cropHeight;
+                mSensorCropHeight = cropWidth;
+                break;
+            case 180:
+                mSensorCropLeft = width - cropLeft - cropWidth;
+                mSensorCropTop = height - cropTop - cropHeight;
+                mSensorCropWidth = cropWidth;
+                mSensorCropHeight = cropHeight;
+                break;
+            case 270:
+                mSensorCropLeft = width - cropTop - cropHeight;
+                mSensorCropTop = cropLeft;
+                mSensorCropWidth = cropHeight;
+                mSensorCropHeight = cropWidth;
+                break;
+            default:
+                mSensorCropLeft = cropLeft;
+                mSensorCropTop = cropTop;
+                mSensorCropWidth = cropWidth;
+                mSensorCropHeight = cropHeight;
+                break;
+        }
+    }
+
+    public byte[] getData() {
+        return mData;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getRotation() {
+        return mRotation;
+    }
+
+    public int getCropLeft() {
+        return mCropLeft;
+    }
+
+    public int getCropTop() {
+        return mCropTop;
+    }
+
+    public int getCropWidth() {
+        return mCropWidth;
+    }
+
+    public int getCropHeight() {
+        return mCropHeight;
+    }
+
+    /** Left edge of the region to decode, in the coordinates of the frame as delivered. */
+    public int getSensorCropLeft() {
+        return mSensorCropLeft;
+    }
+
+    public int getSensorCropTop() {
+        return mSensorCropTop;
+    }
+
+    public int getSensorCropWidth() {
+        return mSensorCropWidth;
+    }
+
+    public int getSensorCropHeight() {
+        return mSensorCropHeight;
+    }
+
+    /**
+     * Lets the decoder report how long it spent rotating and cropping this frame, in
+     * nanoseconds, so {@link ScannerMetrics} can tell it apart from decoding.
+     */
+    public void setCropTime(long cropTime) {
+        mCropTime = cropTime;
+    }
+
+    public long getCropTime() {
+        return mCropTime;
+    }
+
+    /** Lets the decoder report how long it spent binarizing this frame, in nanoseconds. */
+    public void setBinarizeTime(long binarizeTime) {
+        mBinarizeTime = binarizeTime;
+    }
+
+    public long getBinarizeTime() {
+        return mBinarizeTime;
+    }
+
+    /**
+     * Lets a decoder that escalates through cheaper and more expensive passes report which one
+     * it used for this frame, starting at 0 for the cheapest. Decoders with a single pass leave
+     * it at 0.
+     */
+    public void setDecodeTier(int decodeTier) {
+        mDecodeTier = decodeTier;
+    }
+
+    public int getDecodeTier() {
+        return mDecodeTier;
+    }
+
+    /**
+     * Lets a decoder that picks between binarizers report the name of the one it used for this
+     * frame, so {@link ScannerMetrics} can count how often each finds a barcode. Null if the
+     * decoder does not say.
+     */
+    public void setBinarizer(String binarizer) {
+        mBinarizer = binarizer;
+    }
+
+    public String getBinarizer() {
+        return mBinarizer;
+    }
+
+    /**
+     * Lets a decoder that does not try everything on every frame, e.g. one that escalates
+     * through tiers, report that it found nothing but would look differently at the same scene
+     * in the next frame, so a {@link SceneChangeDetector} does not give up on the scene yet.
+     * True unless the decoder says otherwise.
+     */
+    public void setFinalAttempt(boolean finalAttempt) {
+        mFinalAttempt = finalAttempt;
+    }
+
+    public boolean isFinalAttempt() {
+        return mFinalAttempt;
+    }
+
+    /**
+     * The lines of the crop region to decode instead of all of it, or null to decode the whole
+     * region. Decoders that cannot decode single lines decode the whole region.
+     */
+    public void setScanLines(ScanLines scanLines) {
+        mScanLines = scanLines;
+    }
+
+    public ScanLines getScanLines() {
+        return mScanLines;
+    }
+}
@@ -0,0 +1,217 @@
+package me.dm7.barcodescanner.core;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs several frame decoders on the same frame in parallel, each on its own thread, and
+ * returns the results of whichever finds a barcode first. The others are not waited for:
+ * they keep running on a private copy of the crop region and their results are discarded.
+ * A decoder that is still busy with an earlier frame sits out the current one.
+ */
+public class RacingFrameDecoder<T> implements FrameDecoder<T> {
+    private final Lane<T>[] mLanes;
+    // Counts the calls to shutdown(), so a frame that was being decoded during one does not
+    // start the threads again.
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RacingFrameDecoder(List<? extends FrameDecoder<T>> frameDecoders) {
+        if (frameDecoders.isEmpty()) {
+            throw new IllegalArgumentException("At least one frame decoder is required.");
+        }
+        mLanes = new Lane[frameDecoders.size()];
+        for (int i = 0; i < mLanes.length; i++) {
+            mLanes[i] = new Lane<T>(frameDecoders.get(i), i, mGeneration);
+        }
+    }
+
+    @Override
+    public List<T> decode(PreviewFrame frame, final boolean multiple) {
+        int generation = mGeneration.get();
+        final Race<T> race = new Race<T>();
+        long copyStart = System.nanoTime();
+        long copyTime = 0;
+        for (final Lane<T> lane : mLanes) {
+            boolean acquired = lane.acquire(frame);
+            long now = System.nanoTime();
+            copyTime += now - copyStart;
+            copyStart = now;
+            if (!acquired) {
+                continue;
+            }
+            race.mStarted++;
+            boolean executed = lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<T> results = null;
+                    try {
+                        results = lane.mFrameDecoder.decode(lane.mFrame, multiple);
+                    } finally {
+                        race.finish(results, lane.mFrame.getCropTime(), lane.mFrame.getBinarizeTime(),
+                                lane.mFrame.getDecodeTier(), lane.mFrame.getBinarizer(),
+                                lane.mFrame.isFinalAttempt());
+                        lane.release();
+                    }
+                }
+            }, generation);
+            if (!executed) {
+                race.finish(null, 0, 0, 0, null, false);
+                lane.release();
+            }
+        }
+        List<T> results = race.await();
+        // Copying the crop for each lane counts as cropping, on top of what the winner reports.
+        frame.setCropTime(copyTime + race.mCropTime);
+        frame.setBinarizeTime(race.mBinarizeTime);
+        frame.setDecodeTier(race.mDecodeTier);
+        frame.setBinarizer(race.mBinarizer);
+        // A miss is only final if every decoder saw the frame and has nothing left to try.
+        frame.setFinalAttempt(race.mStarted == mLanes.length && race.mFinalAttempt);
+        return results;
+    }
+
+    @Override
+    public Object getFormat(T result) {
+        return mLanes[0].mFrameDecoder.getFormat(result);
+    }
+
+    @Override
+    public String getContents(T result) {
+        return mLanes[0].mFrameDecoder.getContents(result);
+    }
+
+    /**
+     * Stops the decoder threads. They are started again with the next frame, but not by a frame
+     * that was already being decoded when this was called, which finds nothing instead.
+     */
+    public void shutdown() {
+        mGeneration.incrementAndGet();
+        for (Lane<T> lane : mLanes) {
+            lane.shutdown();
+        }
+    }
+
+    private static class Race<T> {
+        private int mStarted;
+        private int mFinished;
+        private List<T> mWinner;
+        private long mCropTime;
+        private long mBinarizeTime;
+        private int mDecodeTier;
+        private String mBinarizer;
+        private boolean mFinalAttempt = true;
+
+        synchronized void finish(List<T> results, long cropTime, long binarizeTime, int decodeTier, String binarizer,
+                                 boolean finalAttempt) {
+            mFinished++;
+            mFinalAttempt &= finalAttempt;
+            if (mWinner == null && results != null && !results.isEmpty()) {
+                mWinner = results;
+                mCropTime = cropTime;
+                mBinarizeTime = binarizeTime;
+                mDecodeTier = decodeTier;
+                mBinarizer = binarizer;
+            }
+            notifyAll();
+        }
+
+        synchronized List<T> await() {
+            boolean interrupted = false;
+            while (mWinner == null && mFinished < mStarted) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return mWinner;
+        }
+    }
+
+    private static class Lane<T> implements ThreadFactory {
+        private final FrameDecoder<T> mFrameDecoder;
+        private final int mIndex;
+        private final AtomicInteger mGeneration;
+        private final PreviewFrame mFrame = new PreviewFrame();
+        private byte[] mBuffer;
+        private boolean mBusy;
+        private ExecutorService mExecutor;
+
+        Lane(FrameDecoder<T> frameDecoder, int index, AtomicInteger generation) {
+            mFrameDecoder = frameDecoder;
+            mIndex = index;
+            mGeneration = generation;
+        }
+
+        /**
+         * Copies the crop region of the frame, so the camera can reuse the frame's buffer while
+         * this lane is still decoding.
+         *
+         * @return false if the lane is still busy with an earlier frame
+         */
+        synchronized boolean acquire(PreviewFrame frame) {
+            if (mBusy) {
+                return false;
+            }
+            mBusy = true;
+
+            int width = frame.getSensorCropWidth();
+            int height = frame.getSensorCropHeight();
+            if (mBuffer == null || mBuffer.length != width * height) {
+                mBuffer = new byte[width * height];
+            }
+            byte[] data = frame.getData();
+            int index = frame.getSensorCropTop() * frame.getWidth() + frame.getSensorCropLeft();
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(data, index, mBuffer, y * width, width);
+                index += frame.getWidth();
+            }
+            mFrame.set(mBuffer, width, height, frame.getRotation(), 0, 0,
+                    frame.getCropWidth(), frame.getCropHeight());
+            mFrame.setScanLines(frame.getScanLines());
+            return true;
+        }
+
+        synchronized void release() {
+            mBusy = false;
+        }
+
+        /**
+         * @param generation the generation the frame started decoding in
+         * @return false if the decoder was shut down since
+         */
+        synchronized boolean execute(Runnable task, int generation) {
+            // Checked while holding the lock, so a shutdown() that just happened either stops
+            // the task here or waits and shuts down the executor started for it.
+            if (generation != mGeneration.get()) {
+                return false;
+            }
+            if (mExecutor == null) {
+                mExecutor = Executors.newSingleThreadExecutor(this);
+            }
+            mExecutor.execute(task);
+            return true;
+        }
+
+        synchronized void shutdown() {
+            if (mExecutor != null) {
+                mExecutor.shutdown();
+                mExecutor = null;
+            }
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BarcodeScannerRace-" + mIndex);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package me.dm7.barcodescanner.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streams recorded frames from a file, for running the decode pipeline without a camera. A
+ * recording is raw frames of the same size written back to back, either full NV21 preview
+ * buffers as delivered by the camera or just their Y800 luminance plane.
+ *
+ * Frames are delivered on a thread of their own as fast as the callback releases them, unless
+ * a frame interval is set.
+ */
+public class ReplayFrameSource implements FrameSource {
+    private static final String THREAD_NAME = "BarcodeScannerReplay";
+    private static final int BUFFER_COUNT = 3;
+
+    public enum Format {
+        /** Luminance plane followed by interleaved V/U at quarter resolution, 12 bits per pixel. */
+        NV21,
+        /** Luminance plane only, 8 bits per pixel. */
+        Y800
+    }
+
+    private final File mFile;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameSize;
+    private final int mFrameCount;
+    private final byte[][] mBuffers = new byte[BUFFER_COUNT][];
+    // Guarded by mBuffers.
+    private final boolean[] mHandedOut = new boolean[BUFFER_COUNT];
+    private final BlockingQueue<byte[]> mFreeBuffers = new ArrayBlockingQueue<byte[]>(BUFFER_COUNT);
+    private volatile boolean mLooping;
+    private volatile long mFrameInterval;
+    // The thread of the current run. A thread that is no longer it was stopped, and must not
+    // deliver another frame even if the replay was started again since.
+    private Thread mThread;
+    private volatile IOException mError;
+
+    public ReplayFrameSource(File file, int width, int height, Format format) {
+        mFile = file;
+        mWidth = width;
+        mHeight = height;
+        mFrameSize = getFrameSize(width, height, format);
+        long length = file.length();
+        if(length == 0 || length % mFrameSize != 0) {
+            throw new IllegalArgumentException(file + " does not hold whole " + width + "x" + height + " " + format + " frames.");
+        }
+        mFrameCount = (int) (length / mFrameSize);
+        for(int i = 0; i < BUFFER_COUNT; i++) {
+            mBuffers[i] = new byte[mFrameSize];
+            mFreeBuffers.add(mBuffers[i]);
+        }
+    }
+
+    public static int getFrameSize(int width, int height, Format format) {
+        return format == Format.NV21 ? width * height * 3 / 2 : width * height;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /** Starts over with the first frame after the last one until stopped. Off by default. */
+    public void setLooping(boolean looping) {
+        mLooping = looping;
+    }
+
+    /**
+     * Minimum time in milliseconds between two frames, e.g. 33 to replay at a camera's 30
+     * frames per second. Defaults to 0, which replays at full speed.
+     */
+    public void setFrameInterval(long frameInterval) {
+        mFrameInterval = frameInterval;
+    }
+
+    @Override
+    public synchronized void start(final Callback callback) {
+        if(mThread != null) {
+            throw new IllegalStateException("Replay is already running.");
+        }
+        mError = null;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replay(callback);
+            }
+        }, THREAD_NAME);
+        mThread.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+            mThread = null;
+        }
+        if(thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void requestFrame() {
+    }
+
+    /**
+     * Takes back a buffer handed to the callback. Anything else, or a buffer released twice, is
+     * ignored, so no buffer is ever queued twice and handed out for two frames at once.
+     */
+    @Override
+    public void releaseFrame(byte[] data) {
+        synchronized (mBuffers) {
+            int index = indexOf(data);
+            if(index < 0 || !mHandedOut[index]) {
+                return;
+            }
+            mHandedOut[index] = false;
+        }
+        mFreeBuffers.offer(data);
+    }
+
+    /**
+     * Waits until every frame was delivered and released, or the replay was stopped.
+     *
+     * @throws IOException if reading the recording failed
+     */
+    public void awaitFinished() throws IOException, InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+        }
+        if(thread != null) {
+            thread.join();
+        }
+        if(mError != null) {
+            throw mError;
+        }
+    }
+
+    private void replay(Callback callback) {
+        try {
+            do {
+                InputStream in = new FileInputStream(mFile);
+                try {
+                    for(int i = 0; i < mFrameCount && isCurrent(); i++) {
+                        byte[] buffer = mFreeBuffers.take();
+                        try {
+                            readFully(in, buffer);
+                        } catch (IOException e) {
+                            mFreeBuffers.add(buffer);
+                            throw e;
+                        }
+                        if(!isCurrent()) {
+                            // Stopped while reading.
+                            mFreeBuffers.add(buffer);
+                            break;
+                        }
+                        synchronized (mBuffers) {
+                            mHandedOut[indexOf(buffer)] = true;
+                        }
+                        long frameStart = System.currentTimeMillis();
+                        callback.onFrame(this, buffer, mWidth, mHeight, System.nanoTime());
+                        long sleep = mFrameInterval - (System.currentTimeMillis() - frameStart);
+                        if(sleep > 0) {
+                            Thread.sleep(sleep);
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            } while(mLooping && isCurrent());
+            if(isCurrent()) {
+                awaitBuffers();
+            }
+        } catch (IOException e) {
+            if(isCurrent()) {
+                mError = e;
+            }
+        } catch (InterruptedException e) {
+            // Stopped.
+        } finally {
+            synchronized (this) {
+                if(mThread == Thread.currentThread()) {
+                    mThread = null;
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isCurrent() {
+        return mThread == Thread.currentThread();
+    }
+
+    /**
+     * Blocks until the callback released every buffer it was handed. The buffers are put back
+     * even when interrupted, so the next run finds them.
+     */
+    private void awaitBuffers() throws InterruptedException {
+        byte[][] buffers = new byte[BUFFER_COUNT][];
+        int taken = 0;
+        try {
+            for(; taken < BUFFER_COUNT; taken++) {
+                buffers[taken] = mFreeBuffers.take();
+            }
+        } finally {
+            for(int i = 0; i < taken; i++) {
+                mFreeBuffers.add(buffers[i]);
+            }
+        }
+    }
+
+    private int indexOf(byte[] buffer) {
+        for(int i = 0; i < mBuffers.length; i++) {
+            if(mBuffers[i] == buffer) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        while(offset < buffer.length) {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            if(read < 0) {
+                throw new IOException("Recording ended in the middle of a frame.");
+            }
+            offset += read;
+        }
+    }
+}
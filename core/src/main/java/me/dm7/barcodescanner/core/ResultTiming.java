@@ -0,0 +1,63 @@
+package me.dm7.barcodescanner.core;
+
+/**
+ * When the frame that results were found in was captured, decoded and delivered. All times are
+ * {@link System#nanoTime()} values.
+ */
+public class ResultTiming {
+    private final long mScanStartTime;
+    private final long mCaptureTime;
+    private final long mDecodeStartTime;
+    private final long mDecodeEndTime;
+    private final long mDeliveryTime;
+    private final int mFrameNumber;
+
+    public ResultTiming(long scanStartTime, long captureTime, long decodeStartTime, long decodeEndTime,
+                        long deliveryTime, int frameNumber) {
+        mScanStartTime = scanStartTime;
+        mCaptureTime = captureTime;
+        mDecodeStartTime = decodeStartTime;
+        mDecodeEndTime = decodeEndTime;
+        mDeliveryTime = deliveryTime;
+        mFrameNumber = frameNumber;
+    }
+
+    /** When scanning was started or last resumed. */
+    public long getScanStartTime() {
+        return mScanStartTime;
+    }
+
+    /** When the frame arrived from the camera. */
+    public long getCaptureTime() {
+        return mCaptureTime;
+    }
+
+    public long getDecodeStartTime() {
+        return mDecodeStartTime;
+    }
+
+    public long getDecodeEndTime() {
+        return mDecodeEndTime;
+    }
+
+    /** When the results were handed to the app on the main thread. */
+    public long getDeliveryTime() {
+        return mDeliveryTime;
+    }
+
+    /** Number of frames received since scanning started, counting this one. */
+    public int getFrameNumber() {
+        return mFrameNumber;
+    }
+
+    /** Nanoseconds from capturing the frame until its results were delivered. */
+    public long getLatency() {
+        return mDeliveryTime - mCaptureTime;
+    }
+
+    @Override
+    public String toString() {
+        return "frame " + mFrameNumber + ": decode " + (mDecodeEndTime - mDecodeStartTime) / 1000
+                + "us, capture to delivery " + getLatency() / 1000 + "us";
+    }
+}
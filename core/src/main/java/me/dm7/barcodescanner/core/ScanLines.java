@@ -0,0 +1,67 @@
+package me.dm7.barcodescanner.core;
+
+/**
+ * The horizontal lines through the framing rect that are decoded instead of the whole region
+ * when only 1D barcodes are scanned: the laser line through the middle, plus a few lines above
+ * and below it at a fixed spacing. Reading a handful of rows is far cheaper than binarizing the
+ * whole region, and the laser line then shows where scanning actually happens.
+ *
+ * Lines are numbered from the middle outwards: 0 is the laser line, 1 the first line above it,
+ * 2 the first line below it, 3 the second line above it and so on.
+ */
+public class ScanLines {
+    public static final int DEFAULT_LINES_PER_SIDE = 2;
+    public static final float DEFAULT_SPACING = 0.1f;
+
+    private final int mLinesPerSide;
+    private final float mSpacing;
+
+    /** Five lines, 10% of the framing rect's height apart. */
+    public ScanLines() {
+        this(DEFAULT_LINES_PER_SIDE, DEFAULT_SPACING);
+    }
+
+    /**
+     * @param linesPerSide how many lines to decode above and below the laser line, 0 for just
+     *                     the laser line
+     * @param spacing the distance between neighbouring lines, as a share of the framing rect's
+     *                height
+     */
+    public ScanLines(int linesPerSide, float spacing) {
+        if (linesPerSide < 0) {
+            throw new IllegalArgumentException("Lines per side must not be negative.");
+        }
+        if (spacing <= 0) {
+            throw new IllegalArgumentException("Spacing must be positive.");
+        }
+        mLinesPerSide = linesPerSide;
+        mSpacing = spacing;
+    }
+
+    public int getLinesPerSide() {
+        return mLinesPerSide;
+    }
+
+    public float getSpacing() {
+        return mSpacing;
+    }
+
+    public int getLineCount() {
+        return 2 * mLinesPerSide + 1;
+    }
+
+    /** The distance between neighbouring lines in a region of the given height, in pixels. */
+    public int getLineSpacing(int height) {
+        return Math.max(1, Math.round(mSpacing * height));
+    }
+
+    /**
+     * The row of a line in a region of the given height, counted from the region's top. Lines
+     * that would fall outside the region are moved to its edge.
+     */
+    public int getLineOffset(int index, int height) {
+        int step = (index + 1) / 2;
+        int offset = height / 2 + (index % 2 == 1 ? -step : step) * getLineSpacing(height);
+        return Math.max(0, Math.min(offset, height - 1));
+    }
+}
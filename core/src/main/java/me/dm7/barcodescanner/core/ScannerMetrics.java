@@ -0,0 +1,309 @@
+package me.dm7.barcodescanner.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts the frames going through the scanning pipeline and how long each stage takes. Stage
+ * durations are kept in {@link LatencyHistogram}s, in microseconds. Recording happens on the
+ * preview and decode threads; {@link #getSnapshot()} can be polled from any thread.
+ */
+public class ScannerMetrics {
+    public enum Stage {
+        /** From the camera delivering a frame until the decode thread picks it up. */
+        HANDOFF,
+        /**
+         * Checking the frame before decoding it, see {@link FrameQualityGate} and
+         * {@link SceneChangeDetector}.
+         */
+        GATE,
+        /** Rotating and cropping the frame to the framing rect, as reported by the decoder. */
+        CROP,
+        /** Turning the frame into black and white, as reported by the decoder. */
+        BINARIZE,
+        /** The rest of the time spent in the decoder. */
+        DECODE,
+        /** From results being found until they are handed to the app on the main thread. */
+        DISPATCH
+    }
+
+    /** Decode tiers counted on their own, higher ones are counted with the last. */
+    public static final int MAX_DECODE_TIERS = 8;
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final FrameQualityGate.Verdict[] VERDICTS = FrameQualityGate.Verdict.values();
+
+    private final LatencyHistogram[] mStageHistograms = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram mCaptureToCallback = new LatencyHistogram();
+    private final LatencyHistogram mTimeToFirstResult = new LatencyHistogram();
+    private long mFramesReceived;
+    private long mFramesDropped;
+    private final long[] mFramesRejected = new long[VERDICTS.length];
+    private long mFramesUnchanged;
+    private long mFramesDecoded;
+    private long mFramesWithResults;
+    private final long[] mTierFramesDecoded = new long[MAX_DECODE_TIERS];
+    private final long[] mTierFramesWithResults = new long[MAX_DECODE_TIERS];
+    // Frames decoded and frames with results, by the binarizer the decoder reported.
+    private final Map<String, long[]> mBinarizerFrames = new LinkedHashMap<String, long[]>();
+
+    public ScannerMetrics() {
+        for (int i = 0; i < STAGES.length; i++) {
+            mStageHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    synchronized void recordFrameReceived() {
+        mFramesReceived++;
+    }
+
+    /** A frame was replaced by a newer one before the decode thread got to it. */
+    synchronized void recordFrameDropped() {
+        mFramesDropped++;
+    }
+
+    /**
+     * Records the checks before a decode. Frames that the {@link FrameQualityGate} rejected, or
+     * that the {@link SceneChangeDetector} found unchanged, are not decoded.
+     */
+    synchronized void recordFrameChecked(FrameQualityGate.Verdict verdict, boolean unchanged, long gateNanos) {
+        mStageHistograms[Stage.GATE.ordinal()].record(gateNanos / 1000);
+        if (verdict != FrameQualityGate.Verdict.ACCEPT) {
+            mFramesRejected[verdict.ordinal()]++;
+        } else if (unchanged) {
+            mFramesUnchanged++;
+        }
+    }
+
+    synchronized void recordStage(Stage stage, long nanos) {
+        mStageHistograms[stage.ordinal()].record(nanos / 1000);
+    }
+
+    /**
+     * Records the stages of one run of the decoder, which took decodeNanos in total.
+     *
+     * @param binarizer the binarizer the decoder reported, or null
+     */
+    synchronized void recordFrameDecoded(long cropNanos, long binarizeNanos, long decodeNanos, int decodeTier,
+                                         String binarizer, boolean found) {
+        int tier = Math.max(0, Math.min(decodeTier, MAX_DECODE_TIERS - 1));
+        long[] binarizerFrames = null;
+        if (binarizer != null) {
+            binarizerFrames = mBinarizerFrames.get(binarizer);
+            if (binarizerFrames == null) {
+                binarizerFrames = new long[2];
+                mBinarizerFrames.put(binarizer, binarizerFrames);
+            }
+            binarizerFrames[0]++;
+        }
+        mFramesDecoded++;
+        mTierFramesDecoded[tier]++;
+        if (found) {
+            mFramesWithResults++;
+            mTierFramesWithResults[tier]++;
+            if (binarizerFrames != null) {
+                binarizerFrames[1]++;
+            }
+        }
+        mStageHistograms[Stage.CROP.ordinal()].record(cropNanos / 1000);
+        mStageHistograms[Stage.BINARIZE.ordinal()].record(binarizeNanos / 1000);
+        mStageHistograms[Stage.DECODE.ordinal()].record(Math.max(0, decodeNanos - cropNanos - binarizeNanos) / 1000);
+    }
+
+    /**
+     * Records results being handed to the app.
+     *
+     * @param captureToCallbackNanos time since the frame was captured
+     * @param sinceScanStartNanos time since scanning started, for the first results after a
+     *                            start, or -1
+     */
+    synchronized void recordResultDelivered(long captureToCallbackNanos, long sinceScanStartNanos) {
+        mCaptureToCallback.record(captureToCallbackNanos / 1000);
+        if (sinceScanStartNanos >= 0) {
+            mTimeToFirstResult.record(sinceScanStartNanos / 1000);
+        }
+    }
+
+    public synchronized Snapshot getSnapshot() {
+        return new Snapshot(this);
+    }
+
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : mStageHistograms) {
+            histogram.reset();
+        }
+        mCaptureToCallback.reset();
+        mTimeToFirstResult.reset();
+        mFramesReceived = 0;
+        mFramesDropped = 0;
+        for (int i = 0; i < mFramesRejected.length; i++) {
+            mFramesRejected[i] = 0;
+        }
+        mFramesUnchanged = 0;
+        mFramesDecoded = 0;
+        mFramesWithResults = 0;
+        for (int i = 0; i < MAX_DECODE_TIERS; i++) {
+            mTierFramesDecoded[i] = 0;
+            mTierFramesWithResults[i] = 0;
+        }
+        mBinarizerFrames.clear();
+    }
+
+    /** A copy of the metrics at one point in time. */
+    public static class Snapshot {
+        private final LatencyHistogram[] mStageHistograms = new LatencyHistogram[STAGES.length];
+        private final LatencyHistogram mCaptureToCallback;
+        private final LatencyHistogram mTimeToFirstResult;
+        private final long mFramesReceived;
+        private final long mFramesDropped;
+        private final long[] mFramesRejected;
+        private final long mFramesUnchanged;
+        private final long mFramesDecoded;
+        private final long mFramesWithResults;
+        private final long[] mTierFramesDecoded;
+        private final long[] mTierFramesWithResults;
+        private final Map<String, long[]> mBinarizerFrames = new LinkedHashMap<String, long[]>();
+
+        private Snapshot(ScannerMetrics metrics) {
+            for (int i = 0; i < STAGES.length; i++) {
+                mStageHistograms[i] = new LatencyHistogram(metrics.mStageHistograms[i]);
+            }
+            mCaptureToCallback = new LatencyHistogram(metrics.mCaptureToCallback);
+            mTimeToFirstResult = new LatencyHistogram(metrics.mTimeToFirstResult);
+            mFramesReceived = metrics.mFramesReceived;
+            mFramesDropped = metrics.mFramesDropped;
+            mFramesRejected = metrics.mFramesRejected.clone();
+            mFramesUnchanged = metrics.mFramesUnchanged;
+            mFramesDecoded = metrics.mFramesDecoded;
+            mFramesWithResults = metrics.mFramesWithResults;
+            mTierFramesDecoded = metrics.mTierFramesDecoded.clone();
+            mTierFramesWithResults = metrics.mTierFramesWithResults.clone();
+            for (Map.Entry<String, long[]> entry : metrics.mBinarizerFrames.entrySet()) {
+                mBinarizerFrames.put(entry.getKey(), entry.getValue().clone());
+            }
+        }
+
+        /** Frames delivered by the camera while scanning. */
+        public long getFramesReceived() {
+            return mFramesReceived;
+        }
+
+        /** Frames skipped because the decode thread was still busy when a newer one arrived. */
+        public long getFramesDropped() {
+            return mFramesDropped;
+        }
+
+        /** Frames the {@link FrameQualityGate} turned away, for any reason. */
+        public long getFramesRejected() {
+            long rejected = 0;
+            for (long count : mFramesRejected) {
+                rejected += count;
+            }
+            return rejected;
+        }
+
+        /** Frames the {@link FrameQualityGate} turned away for the given reason. */
+        public long getFramesRejected(FrameQualityGate.Verdict verdict) {
+            return mFramesRejected[verdict.ordinal()];
+        }
+
+        /** Frames the {@link SceneChangeDetector} skipped because the scene had not changed. */
+        public long getFramesUnchanged() {
+            return mFramesUnchanged;
+        }
+
+        public long getFramesDecoded() {
+            return mFramesDecoded;
+        }
+
+        /** Decoded frames in which at least one barcode was found. */
+        public long getFramesWithResults() {
+            return mFramesWithResults;
+        }
+
+        /**
+         * Frames decoded with a tier of an escalating decoder, see
+         * {@link PreviewFrame#setDecodeTier}. Decoders with a single pass use tier 0.
+         */
+        public long getFramesDecoded(int decodeTier) {
+            return mTierFramesDecoded[decodeTier];
+        }
+
+        /** Frames in which a tier of an escalating decoder found at least one barcode. */
+        public long getFramesWithResults(int decodeTier) {
+            return mTierFramesWithResults[decodeTier];
+        }
+
+        /** Names of the binarizers decoders reported, see {@link PreviewFrame#setBinarizer}. */
+        public Set<String> getBinarizers() {
+            return Collections.unmodifiableSet(mBinarizerFrames.keySet());
+        }
+
+        /** Frames decoded with the given binarizer. */
+        public long getFramesDecoded(String binarizer) {
+            long[] binarizerFrames = mBinarizerFrames.get(binarizer);
+            return binarizerFrames != null ? binarizerFrames[0] : 0;
+        }
+
+        /** Frames in which the given binarizer led to at least one barcode. */
+        public long getFramesWithResults(String binarizer) {
+            long[] binarizerFrames = mBinarizerFrames.get(binarizer);
+            return binarizerFrames != null ? binarizerFrames[1] : 0;
+        }
+
+        /** Share of decoded frames in which a barcode was found, between 0 and 1. */
+        public double getSuccessRate() {
+            return mFramesDecoded > 0 ? (double) mFramesWithResults / mFramesDecoded : 0;
+        }
+
+        /** Durations of a stage in microseconds. Do not modify. */
+        public LatencyHistogram getStage(Stage stage) {
+            return mStageHistograms[stage.ordinal()];
+        }
+
+        /**
+         * Microseconds from a frame arriving from the camera until the results found in it
+         * were handed to the app, for every delivery.
+         */
+        public LatencyHistogram getCaptureToCallback() {
+            return mCaptureToCallback;
+        }
+
+        /**
+         * Microseconds from starting or resuming scanning until the first results were handed
+         * to the app, once per start.
+         */
+        public LatencyHistogram getTimeToFirstResult() {
+            return mTimeToFirstResult;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("received=").append(mFramesReceived)
+                    .append(" dropped=").append(mFramesDropped)
+                    .append(" rejected=").append(getFramesRejected())
+                    .append(" unchanged=").append(mFramesUnchanged)
+                    .append(" decoded=").append(mFramesDecoded)
+                    .append(" found=").append(mFramesWithResults);
+            for (Stage stage : STAGES) {
+                builder.append('\n').append(stage).append(": ").append(getStage(stage));
+            }
+            builder.append("\nCAPTURE_TO_CALLBACK: ").append(mCaptureToCallback);
+            builder.append("\nTIME_TO_FIRST_RESULT: ").append(mTimeToFirstResult);
+            for (int i = 0; i < MAX_DECODE_TIERS; i++) {
+                if (mTierFramesDecoded[i] > 0) {
+                    builder.append("\nTIER ").append(i).append(": decoded=").append(mTierFramesDecoded[i])
+                            .append(" found=").append(mTierFramesWithResults[i]);
+                }
+            }
+            for (Map.Entry<String, long[]> entry : mBinarizerFrames.entrySet()) {
+                builder.append("\nBINARIZER ").append(entry.getKey()).append(": decoded=").append(entry.getValue()[0])
+                        .append(" found=").append(entry.getValue()[1]);
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package me.dm7.barcodescanner.core;
+
+/**
+ * Where the scanner reports its stages to the installed {@link ScannerTracer}. With the
+ * default {@link ScannerTracer#NONE} every call is a field read and an empty method, which the
+ * JIT inlines away.
+ */
+public final class ScannerTrace {
+    public static final String OPEN_CAMERA = "BarcodeScanner:openCamera";
+    public static final String STOP_CAMERA = "BarcodeScanner:stopCamera";
+    public static final String START_PREVIEW = "BarcodeScanner:startPreview";
+    public static final String STOP_PREVIEW = "BarcodeScanner:stopPreview";
+    public static final String SET_PARAMETERS = "BarcodeScanner:setParameters";
+    public static final String AUTO_FOCUS = "BarcodeScanner:autoFocus";
+    public static final String DECODE_FRAME = "BarcodeScanner:decodeFrame";
+    public static final String ROTATE_CROP = "BarcodeScanner:rotateCrop";
+    public static final String BINARIZE = "BarcodeScanner:binarize";
+    public static final String DECODE = "BarcodeScanner:decode";
+    public static final String DELIVER_RESULTS = "BarcodeScanner:deliverResults";
+
+    private static volatile ScannerTracer sTracer = ScannerTracer.NONE;
+
+    private ScannerTrace() {
+    }
+
+    /** Installs a tracer for all scanner views, or the no-op default if null. */
+    public static void setTracer(ScannerTracer tracer) {
+        sTracer = tracer != null ? tracer : ScannerTracer.NONE;
+    }
+
+    public static ScannerTracer getTracer() {
+        return sTracer;
+    }
+
+    public static void beginSection(String name) {
+        sTracer.beginSection(name);
+    }
+
+    public static void endSection() {
+        sTracer.endSection();
+    }
+
+    public static void beginAsyncSection(String name, int cookie) {
+        sTracer.beginAsyncSection(name, cookie);
+    }
+
+    public static void endAsyncSection(String name, int cookie) {
+        sTracer.endAsyncSection(name, cookie);
+    }
+}
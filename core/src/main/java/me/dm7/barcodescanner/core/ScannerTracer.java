@@ -0,0 +1,38 @@
+package me.dm7.barcodescanner.core;
+
+/**
+ * Receives the boundaries of the stages of the scanning pipeline, e.g. to show them in
+ * systrace. Install one with {@link ScannerTrace#setTracer}; {@link AndroidScannerTracer}
+ * forwards to {@link android.os.Trace}.
+ *
+ * Sections must be ended on the thread they were begun on. Async sections may end on any
+ * thread and are matched by name and cookie.
+ */
+public interface ScannerTracer {
+    /** Does nothing, the default. */
+    public static final ScannerTracer NONE = new ScannerTracer() {
+        @Override
+        public void beginSection(String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+
+        @Override
+        public void beginAsyncSection(String name, int cookie) {
+        }
+
+        @Override
+        public void endAsyncSection(String name, int cookie) {
+        }
+    };
+
+    public void beginSection(String name);
+
+    public void endSection();
+
+    public void beginAsyncSection(String name, int cookie);
+
+    public void endAsyncSection(String name, int cookie);
+}
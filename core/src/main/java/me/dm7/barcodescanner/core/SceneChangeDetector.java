@@ -0,0 +1,136 @@
+package me.dm7.barcodescanner.core;
+
+/**
+ * Skips decoding frames that look the same as the last decoded frame when nothing was found in
+ * it, e.g. while the device is pointed at an empty counter. Shrinks the crop region to a 16x16
+ * thumbnail, each cell the average of 4x4 evenly spaced pixels, and decodes again as soon as
+ * any cell changes by more than the threshold. Frames are always decoded after a barcode was
+ * found, so one that stays in view keeps being seen, and after a decoder reported that it has
+ * not tried everything on the scene yet, see {@link PreviewFrame#setFinalAttempt}.
+ *
+ * Keeps the thumbnail of the last decoded frame, so an instance must only be used by one thread,
+ * except for {@link #reset()} and the threshold.
+ */
+public class SceneChangeDetector {
+    public static final int DEFAULT_THRESHOLD = 12;
+
+    private static final int THUMBNAIL_SIZE = 16;
+    private static final int SAMPLES_PER_CELL = 4;
+    private static final int SAMPLES_PER_SIDE = THUMBNAIL_SIZE * SAMPLES_PER_CELL;
+
+    // Cells hold the sum of their samples rather than the average.
+    private int[] mThumbnail = new int[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+    private int[] mReference = new int[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+    private boolean mHasReference;
+    private int mReferenceWidth;
+    private int mReferenceHeight;
+    private int mReferenceCropLeft;
+    private int mReferenceCropTop;
+    private int mReferenceCropWidth;
+    private int mReferenceCropHeight;
+    // Whether the next frame is decoded even if it looks the same.
+    private boolean mDecodeAgain;
+    private int mLastDifference;
+    private volatile int mThreshold = DEFAULT_THRESHOLD;
+    private volatile boolean mResetRequested;
+
+    /** How much the average brightness of a cell, from 0 to 255, has to change to decode again. */
+    public void setThreshold(int threshold) {
+        mThreshold = threshold;
+    }
+
+    public int getThreshold() {
+        return mThreshold;
+    }
+
+    /** The largest change of a cell between the last frame checked and the last decoded frame. */
+    public int getLastDifference() {
+        return mLastDifference;
+    }
+
+    /** Forgets the last decoded frame, so the next frame is decoded whatever it looks like. */
+    public void reset() {
+        mResetRequested = true;
+    }
+
+    /**
+     * Whether the frame has to be decoded. If so, it becomes the frame the following ones are
+     * compared with, and {@link #setLastDecode} should be called with the outcome.
+     */
+    public boolean shouldDecode(PreviewFrame frame) {
+        if (mResetRequested) {
+            mResetRequested = false;
+            mHasReference = false;
+            mDecodeAgain = false;
+        }
+
+        sample(frame, mThumbnail);
+        boolean changed = !mHasReference || !hasReferenceGeometry(frame);
+        mLastDifference = changed ? 0 : maxDifference(mThumbnail, mReference) / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+        if (!changed && !mDecodeAgain && mLastDifference <= mThreshold) {
+            return false;
+        }
+
+        int[] reference = mReference;
+        mReference = mThumbnail;
+        mThumbnail = reference;
+        mHasReference = true;
+        mReferenceWidth = frame.getWidth();
+        mReferenceHeight = frame.getHeight();
+        mReferenceCropLeft = frame.getSensorCropLeft();
+        mReferenceCropTop = frame.getSensorCropTop();
+        mReferenceCropWidth = frame.getSensorCropWidth();
+        mReferenceCropHeight = frame.getSensorCropHeight();
+        return true;
+    }
+
+    /**
+     * The outcome of decoding the frame {@link #shouldDecode} last let through.
+     *
+     * @param found whether anything was found in it
+     * @param finalAttempt false if the decoder would look differently at the same scene in the
+     *                     next frame, see {@link PreviewFrame#isFinalAttempt()}
+     */
+    public void setLastDecode(boolean found, boolean finalAttempt) {
+        mDecodeAgain = found || !finalAttempt;
+    }
+
+    private boolean hasReferenceGeometry(PreviewFrame frame) {
+        return frame.getWidth() == mReferenceWidth && frame.getHeight() == mReferenceHeight
+                && frame.getSensorCropLeft() == mReferenceCropLeft && frame.getSensorCropTop() == mReferenceCropTop
+                && frame.getSensorCropWidth() == mReferenceCropWidth && frame.getSensorCropHeight() == mReferenceCropHeight;
+    }
+
+    private static void sample(PreviewFrame frame, int[] thumbnail) {
+        byte[] data = frame.getData();
+        int stride = frame.getWidth();
+        int left = frame.getSensorCropLeft();
+        int top = frame.getSensorCropTop();
+        int width = frame.getSensorCropWidth();
+        int height = frame.getSensorCropHeight();
+
+        for (int i = 0; i < thumbnail.length; i++) {
+            thumbnail[i] = 0;
+        }
+        // Samples sit in the middle of their share of the crop, so small crops repeat pixels.
+        for (int sy = 0; sy < SAMPLES_PER_SIDE; sy++) {
+            int rowStart = (top + (2 * sy + 1) * height / (2 * SAMPLES_PER_SIDE)) * stride + left;
+            int cellRow = sy / SAMPLES_PER_CELL * THUMBNAIL_SIZE;
+            for (int sx = 0; sx < SAMPLES_PER_SIDE; sx++) {
+                int x = (2 * sx + 1) * width / (2 * SAMPLES_PER_SIDE);
+                thumbnail[cellRow + sx / SAMPLES_PER_CELL] += data[rowStart + x] & 0xFF;
+            }
+        }
+    }
+
+    private static int maxDifference(int[] a, int[] b) {
+        int max = 0;
+        for (int i = 0; i < a.length; i++) {
+            int difference = Math.abs(a[i] - b[i]);
+            if (difference > max) {
+                max = difference;
+            }
+        }
+        return max;
+    }
+}
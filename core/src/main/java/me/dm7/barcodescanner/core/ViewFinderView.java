@@ -14,6 +14,7 @@ public class ViewFinderView extends View {
     private static final String TAG = "ViewFinderView";
 
     private Rect mFramingRect;
+    private ScanLines mScanLines;
 
     private static final int MIN_FRAME_WIDTH = 240;
     private static final int MIN_FRAME_HEIGHT = 240;
@@ -50,6 +51,12 @@ public class ViewFinderView extends View {
         return mFramingRect;
     }
 
+    /** Draws the laser on every line that is decoded, or through the middle if null. */
+    public void setScanLines(ScanLines scanLines) {
+        mScanLines = scanLines;
+        invalidate();
+    }
+
     @Override
     public void onDraw(Canvas canvas) {
         if(mFramingRect == null) {
@@ -104,8 +111,15 @@ public class ViewFinderView extends View {
         paint.setAlpha(SCANNER_ALPHA[scannerAlpha]);
         paint.setStyle(Paint.Style.FILL);
         scannerAlpha = (scannerAlpha + 1) % SCANNER_ALPHA.length;
-        int middle = mFramingRect.height() / 2 + mFramingRect.top;
-        canvas.drawRect(mFramingRect.left + 2, middle - 1, mFramingRect.right - 1, middle + 2, paint);
+        if(mScanLines == null) {
+            int middle = mFramingRect.height() / 2 + mFramingRect.top;
+            canvas.drawRect(mFramingRect.left + 2, middle - 1, mFramingRect.right - 1, middle + 2, paint);
+        } else {
+            for(int i = 0; i < mScanLines.getLineCount(); i++) {
+                int line = mScanLines.getLineOffset(i, mFramingRect.height()) + mFramingRect.top;
+                canvas.drawRect(mFramingRect.left + 2, line - 1, mFramingRect.right - 1, line + 2, paint);
+            }
+        }
 
         postInvalidateDelayed(ANIMATION_DELAY,
                 mFramingRect.left - POINT_SIZE,
@@ -0,0 +1,137 @@
+package me.dm7.barcodescanner.zbar;
+
+import android.text.TextUtils;
+
+import net.sourceforge.zbar.Config;
+import net.sourceforge.zbar.Image;
+import net.sourceforge.zbar.ImageScanner;
+import net.sourceforge.zbar.Symbol;
+import net.sourceforge.zbar.SymbolSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import me.dm7.barcodescanner.core.FrameDecoder;
+import me.dm7.barcodescanner.core.PreviewFrame;
+import me.dm7.barcodescanner.core.ScanLines;
+import me.dm7.barcodescanner.core.ScannerTrace;
+
+public class ZBarFrameDecoder implements FrameDecoder<Result> {
+    static {
+        System.loadLibrary("iconv");
+    }
+
+    // Every third row and column of the crop region is scanned.
+    private static final int DEFAULT_DENSITY = 3;
+
+    private volatile ImageScanner mScanner;
+
+    public ZBarFrameDecoder(Collection<BarcodeFormat> formats) {
+        setFormats(formats);
+    }
+
+    public void setFormats(Collection<BarcodeFormat> formats) {
+        ImageScanner scanner = new ImageScanner();
+        scanner.setConfig(0, Config.X_DENSITY, DEFAULT_DENSITY);
+        scanner.setConfig(0, Config.Y_DENSITY, DEFAULT_DENSITY);
+
+        scanner.setConfig(Symbol.NONE, Config.ENABLE, 0);
+        for(BarcodeFormat format : formats) {
+            scanner.setConfig(format.getId(), Config.ENABLE, 1);
+        }
+        mScanner = scanner;
+    }
+
+    @Override
+    public List<Result> decode(PreviewFrame frame, boolean multiple) {
+        // ZBar scans in both directions, so the frame is scanned as the sensor delivered it and
+        // only the crop region is mapped into sensor coordinates.
+        long start = System.nanoTime();
+        int cropLeft = frame.getSensorCropLeft();
+        int cropTop = frame.getSensorCropTop();
+        int cropWidth = frame.getSensorCropWidth();
+        int cropHeight = frame.getSensorCropHeight();
+        int xDensity = DEFAULT_DENSITY;
+        int yDensity = DEFAULT_DENSITY;
+
+        ScanLines scanLines = frame.getScanLines();
+        if (scanLines != null) {
+            // Narrow the crop to the band between the outermost lines and scan only along the
+            // lines, at their spacing. The band spans a whole number of spacings, so ZBar's scan
+            // lines fall on the lines themselves.
+            int height = frame.getCropHeight();
+            int first = height;
+            int last = 0;
+            for (int i = 0; i < scanLines.getLineCount(); i++) {
+                int offset = scanLines.getLineOffset(i, height);
+                first = Math.min(first, offset);
+                last = Math.max(last, offset);
+            }
+            int rotation = frame.getRotation();
+            int bandStart = rotation == 180 || rotation == 270 ? height - 1 - last : first;
+            int bandSize = last - first + 1;
+            int spacing = scanLines.getLineSpacing(height);
+            if (rotation == 0 || rotation == 180) {
+                // Lines on screen are rows of the frame, which ZBar scans at the Y density.
+                cropTop += bandStart;
+                cropHeight = bandSize;
+                xDensity = 0;
+                yDensity = spacing;
+            } else {
+                cropLeft += bandStart;
+                cropWidth = bandSize;
+                xDensity = spacing;
+                yDensity = 0;
+            }
+        }
+
+        Image barcode = new Image(frame.getWidth(), frame.getHeight(), "Y800");
+        barcode.setData(frame.getData());
+        barcode.setCrop(cropLeft, cropTop, cropWidth, cropHeight);
+        frame.setCropTime(System.nanoTime() - start);
+
+        ImageScanner scanner = mScanner;
+        scanner.setConfig(0, Config.X_DENSITY, xDensity);
+        scanner.setConfig(0, Config.Y_DENSITY, yDensity);
+        int result;
+        ScannerTrace.beginSection(ScannerTrace.DECODE);
+        try {
+            result = scanner.scanImage(barcode);
+        } finally {
+            ScannerTrace.endSection();
+        }
+
+        if (result == 0) {
+            barcode.destroy();
+            return null;
+        }
+
+        List<Result> rawResults = new ArrayList<Result>();
+        SymbolSet syms = scanner.getResults();
+        for (Symbol sym : syms) {
+            String symData = sym.getData();
+            if (!TextUtils.isEmpty(symData)) {
+                Result rawResult = new Result();
+                rawResult.setContents(symData);
+                rawResult.setBarcodeFormat(BarcodeFormat.getFormatById(sym.getType()));
+                rawResults.add(rawResult);
+                if (!multiple) {
+                    break;
+                }
+            }
+        }
+        barcode.destroy();
+        return rawResults;
+    }
+
+    @Override
+    public Object getFormat(Result rawResult) {
+        return rawResult.getBarcodeFormat();
+    }
+
+    @Override
+    public String getContents(Result rawResult) {
+        return rawResult.getContents();
+    }
+}
@@ -1,48 +1,35 @@
 package me.dm7.barcodescanner.zbar;
 
 import android.content.Context;
-import android.content.res.Configuration;
-import android.graphics.Rect;
-import android.hardware.Camera;
-import android.text.TextUtils;
 import android.util.AttributeSet;
 
-import net.sourceforge.zbar.Config;
-import net.sourceforge.zbar.Image;
-import net.sourceforge.zbar.ImageScanner;
-import net.sourceforge.zbar.Symbol;
-import net.sourceforge.zbar.SymbolSet;
-
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.EnumMap;
 import java.util.List;
-import java.util.Map;
 
 import me.dm7.barcodescanner.core.BarcodeScannerView;
-import me.dm7.barcodescanner.core.DisplayUtils;
 
-public class ZBarScannerView extends BarcodeScannerView {
+public class ZBarScannerView extends BarcodeScannerView<Result> {
     public interface ResultHandler {
         public void handleResult(Result rawResult);
     }
 
-    static {
-        System.loadLibrary("iconv");
+    public interface MultipleResultHandler {
+        public void handleResults(List<Result> rawResults);
     }
 
-    private ImageScanner mScanner;
     private List<BarcodeFormat> mFormats;
     private ResultHandler mResultHandler;
+    private MultipleResultHandler mMultipleResultHandler;
+    private final ZBarFrameDecoder mFrameDecoder = new ZBarFrameDecoder(getFormats());
 
     public ZBarScannerView(Context context) {
         super(context);
-        setupScanner();
+        setFrameDecoder(mFrameDecoder);
     }
 
     public ZBarScannerView(Context context, AttributeSet attributeSet) {
         super(context, attributeSet);
-        setupScanner();
+        setFrameDecoder(mFrameDecoder);
     }
 
     public void setFormats(List<BarcodeFormat> formats) {
@@ -54,6 +41,15 @@ public class ZBarScannerView extends BarcodeScannerView {
         mResultHandler = resultHandler;
     }
 
+    /**
+     * Once set, every barcode found in a frame is delivered together. The
+     * {@link ResultHandler}, if any, still receives the first of them.
+     */
+    public void setMultipleResultHandler(MultipleResultHandler multipleResultHandler) {
+        mMultipleResultHandler = multipleResultHandler;
+        setDecodeMultiple(multipleResultHandler != null);
+    }
+
     public Collection<BarcodeFormat> getFormats() {
         if(mFormats == null) {
             return BarcodeFormat.ALL_FORMATS;
@@ -62,57 +58,16 @@ public class ZBarScannerView extends BarcodeScannerView {
     }
 
     public void setupScanner() {
-        mScanner = new ImageScanner();
-        mScanner.setConfig(0, Config.X_DENSITY, 3);
-        mScanner.setConfig(0, Config.Y_DENSITY, 3);
-
-        mScanner.setConfig(Symbol.NONE, Config.ENABLE, 0);
-        for(BarcodeFormat format : getFormats()) {
-            mScanner.setConfig(format.getId(), Config.ENABLE, 1);
-        }
+        mFrameDecoder.setFormats(getFormats());
     }
 
     @Override
-    public void onPreviewFrame(byte[] data, Camera camera) {
-        Camera.Parameters parameters = camera.getParameters();
-        Camera.Size size = parameters.getPreviewSize();
-        int width = size.width;
-        int height = size.height;
-
-        if(DisplayUtils.getScreenOrientation(getContext()) == Configuration.ORIENTATION_PORTRAIT) {
-            byte[] rotatedData = new byte[data.length];
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++)
-                    rotatedData[x * height + height - y - 1] = data[x + y * width];
-            }
-            int tmp = width;
-            width = height;
-            height = tmp;
-            data = rotatedData;
+    protected void handleResults(List<Result> rawResults) {
+        if(mMultipleResultHandler != null) {
+            mMultipleResultHandler.handleResults(rawResults);
         }
-
-        Image barcode = new Image(width, height, "Y800");
-        barcode.setData(data);
-
-        int result = mScanner.scanImage(barcode);
-
-        if (result != 0) {
-            stopCamera();
-            if(mResultHandler != null) {
-                SymbolSet syms = mScanner.getResults();
-                Result rawResult = new Result();
-                for (Symbol sym : syms) {
-                    String symData = sym.getData();
-                    if (!TextUtils.isEmpty(symData)) {
-                        rawResult.setContents(symData);
-                        rawResult.setBarcodeFormat(BarcodeFormat.getFormatById(sym.getType()));
-                        break;
-                    }
-                }
-                mResultHandler.handleResult(rawResult);
-            }
-        } else {
-            camera.setOneShotPreviewCallback(this);
+        if(mResultHandler != null) {
+            mResultHandler.handleResult(rawResults.get(0));
         }
     }
-}
\ No newline at end of file
+}
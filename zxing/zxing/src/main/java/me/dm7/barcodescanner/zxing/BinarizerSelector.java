@@ -0,0 +1,164 @@
+package me.dm7.barcodescanner.zxing;
+
+/**
+ * Picks the binarizer for each frame from the lighting of the region that is about to be
+ * binarized, i.e. the crop region scaled by the decode tier. Evenly lit frames
+ * with good contrast are binarized with the single threshold of
+ * {@link com.google.zxing.common.GlobalHistogramBinarizer}, which is cheaper; frames with
+ * shadows, glare or little contrast with the local thresholds of
+ * {@link com.google.zxing.common.HybridBinarizer}.
+ *
+ * Looks at 16x16 pixels in each cell of a 4x4 grid over the region. A frame is evenly lit
+ * if every cell gets about as bright as the brightest 5% of the samples, and every cell with
+ * both dark and light in it gets darker than halfway between those and the darkest 5%, which
+ * is roughly where the global threshold ends up.
+ * After a few frames in a row binarized with the global threshold came up empty, the next one
+ * is binarized with the local thresholds anyway, in case the lighting was misjudged.
+ *
+ * Only the 2D formats use the binarizer; 1D formats are read row by row with a threshold per
+ * row either way. Keeps a histogram between frames, so an instance must only be used by one
+ * thread.
+ */
+public class BinarizerSelector {
+    public static final int DEFAULT_MIN_CONTRAST = 64;
+    public static final int DEFAULT_MAX_GLOBAL_MISSES = 3;
+
+    public enum Binarizer {
+        GLOBAL_HISTOGRAM,
+        HYBRID
+    }
+
+    private static final int CELLS_PER_SIDE = 4;
+    private static final int SAMPLES_PER_CELL_SIDE = 16;
+    private static final int TAIL_PERCENT = 5;
+
+    private final int[] mHistogram = new int[256];
+    private final int[] mCellMin = new int[CELLS_PER_SIDE * CELLS_PER_SIDE];
+    private final int[] mCellMax = new int[CELLS_PER_SIDE * CELLS_PER_SIDE];
+    private volatile int mMinContrast = DEFAULT_MIN_CONTRAST;
+    private volatile int mMaxGlobalMisses = DEFAULT_MAX_GLOBAL_MISSES;
+    private int mGlobalMisses;
+    private int mLastContrast;
+
+    /**
+     * Frames whose darkest and brightest 5%, from 0 to 255, are closer together than this get
+     * the local thresholds.
+     */
+    public void setMinContrast(int minContrast) {
+        mMinContrast = minContrast;
+    }
+
+    public int getMinContrast() {
+        return mMinContrast;
+    }
+
+    /**
+     * How many frames in a row binarized with the global threshold may find nothing before the
+     * next one gets the local thresholds, 0 to never force them.
+     */
+    public void setMaxGlobalMisses(int maxGlobalMisses) {
+        mMaxGlobalMisses = maxGlobalMisses;
+    }
+
+    public int getMaxGlobalMisses() {
+        return mMaxGlobalMisses;
+    }
+
+    /** Contrast of the last frame looked at, from 0 to 255. */
+    public int getLastContrast() {
+        return mLastContrast;
+    }
+
+    /** Lets the selector know whether the frame it picked the binarizer for had a barcode in it. */
+    public void recordOutcome(Binarizer binarizer, boolean found) {
+        if (found) {
+            mGlobalMisses = 0;
+        } else if (binarizer == Binarizer.GLOBAL_HISTOGRAM) {
+            mGlobalMisses++;
+        }
+    }
+
+    /** @param region the region of the frame the binarizer will be given */
+    public Binarizer select(RotatedLuminanceSource region) {
+        int maxGlobalMisses = mMaxGlobalMisses;
+        if (maxGlobalMisses > 0 && mGlobalMisses >= maxGlobalMisses) {
+            mGlobalMisses = 0;
+            return Binarizer.HYBRID;
+        }
+        return isEvenlyLit(region) ? Binarizer.GLOBAL_HISTOGRAM : Binarizer.HYBRID;
+    }
+
+    private boolean isEvenlyLit(RotatedLuminanceSource region) {
+        int width = region.getWidth();
+        int height = region.getHeight();
+        mLastContrast = 0;
+        int cellWidth = width / CELLS_PER_SIDE;
+        int cellHeight = height / CELLS_PER_SIDE;
+        if (cellWidth == 0 || cellHeight == 0) {
+            return false;
+        }
+
+        int stepX = Math.max(1, cellWidth / SAMPLES_PER_CELL_SIDE);
+        int stepY = Math.max(1, cellHeight / SAMPLES_PER_CELL_SIDE);
+        int[] histogram = mHistogram;
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = 0;
+        }
+        int count = 0;
+        for (int cellY = 0; cellY < CELLS_PER_SIDE; cellY++) {
+            for (int cellX = 0; cellX < CELLS_PER_SIDE; cellX++) {
+                int cell = cellY * CELLS_PER_SIDE + cellX;
+                int min = 0xFF;
+                int max = 0;
+                int x0 = cellX * cellWidth;
+                int y0 = cellY * cellHeight;
+                for (int y = y0; y < y0 + cellHeight; y += stepY) {
+                    for (int x = x0; x < x0 + cellWidth; x += stepX) {
+                        int pixel = region.getLuminance(x, y);
+                        histogram[pixel]++;
+                        count++;
+                        if (pixel < min) {
+                            min = pixel;
+                        }
+                        if (pixel > max) {
+                            max = pixel;
+                        }
+                    }
+                }
+                mCellMin[cell] = min;
+                mCellMax[cell] = max;
+            }
+        }
+
+        int tail = Math.max(1, count * TAIL_PERCENT / 100);
+        int dark = 0;
+        int seen = histogram[0];
+        while (seen < tail) {
+            seen += histogram[++dark];
+        }
+        int light = 255;
+        seen = histogram[255];
+        while (seen < tail) {
+            seen += histogram[--light];
+        }
+        int contrast = light - dark;
+        mLastContrast = contrast;
+        if (contrast < mMinContrast) {
+            return false;
+        }
+
+        int threshold = (dark + light) / 2;
+        for (int cell = 0; cell < mCellMin.length; cell++) {
+            // Every cell has to reach about the white of the whole frame, which it does not
+            // under a shadow. Cells with both dark and light in them have to go below the
+            // threshold, which they do not under glare.
+            if (mCellMax[cell] < light - contrast / 4) {
+                return false;
+            }
+            if (mCellMax[cell] - mCellMin[cell] >= contrast / 2 && mCellMin[cell] >= threshold) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package me.dm7.barcodescanner.zxing;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One pass of {@link ZXingFrameDecoder}'s escalating decode: which formats to look for, how
+ * hard to look and how much of the frame to look at. The decoder starts every scan on the first
+ * tier, moves on to the next one after a number of frames without a result, and goes back to
+ * the first as soon as something is found. After the last tier it starts over at the first.
+ */
+public class DecodeTier {
+    /** The formats most apps scan most of the time. */
+    public static final List<BarcodeFormat> COMMON_FORMATS = Collections.unmodifiableList(Arrays.asList(
+            BarcodeFormat.QR_CODE, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8, BarcodeFormat.UPC_A,
+            BarcodeFormat.UPC_E, BarcodeFormat.CODE_128));
+
+    /**
+     * Every frame decoded the same way, looking for every format in the framing rect. The
+     * default.
+     */
+    public static final List<DecodeTier> SINGLE_TIER = Collections.singletonList(
+            new DecodeTier(null, false, 1f, 1));
+
+    /**
+     * Four frames looking for the common formats in the framing rect, then one frame looking
+     * harder for every format in an area one and a half times as large. Cheaper per frame than
+     * {@link #SINGLE_TIER} for apps that mostly scan the common formats, but the others are
+     * only looked for on every fifth frame.
+     */
+    public static final List<DecodeTier> ESCALATING_TIERS = Collections.unmodifiableList(Arrays.asList(
+            new DecodeTier(COMMON_FORMATS, false, 1f, 4),
+            new DecodeTier(null, true, 1.5f, 1)));
+
+    private final List<BarcodeFormat> mFormats;
+    private final boolean mTryHarder;
+    private final float mCropScale;
+    private final int mAttempts;
+
+    /**
+     * @param formats the formats to look for, or null for all of those passed to
+     *                {@link ZXingFrameDecoder#setFormats}. If none of them are, all of those
+     *                are looked for as well.
+     * @param tryHarder whether to set {@link com.google.zxing.DecodeHintType#TRY_HARDER}
+     * @param cropScale the size of the region to decode relative to the framing rect, around the
+     *                  same center and limited to the frame
+     * @param attempts how many frames in a row to decode with this tier before moving on
+     */
+    public DecodeTier(Collection<BarcodeFormat> formats, boolean tryHarder, float cropScale, int attempts) {
+        if (cropScale <= 0) {
+            throw new IllegalArgumentException("Crop scale must be positive.");
+        }
+        if (attempts < 1) {
+            throw new IllegalArgumentException("A tier needs at least one attempt.");
+        }
+        mFormats = formats == null ? null : Collections.unmodifiableList(new ArrayList<BarcodeFormat>(formats));
+        mTryHarder = tryHarder;
+        mCropScale = cropScale;
+        mAttempts = attempts;
+    }
+
+    public List<BarcodeFormat> getFormats() {
+        return mFormats;
+    }
+
+    public boolean isTryHarder() {
+        return mTryHarder;
+    }
+
+    public float getCropScale() {
+        return mCropScale;
+    }
+
+    public int getAttempts() {
+        return mAttempts;
+    }
+}
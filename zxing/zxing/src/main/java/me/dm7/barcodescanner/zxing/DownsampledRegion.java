@@ -0,0 +1,182 @@
+package me.dm7.barcodescanner.zxing;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import me.dm7.barcodescanner.core.PreviewFrame;
+import me.dm7.barcodescanner.core.ScannerTrace;
+
+/**
+ * A region of a frame shrunk by a power of two, each pixel the average of a square of factor x
+ * factor pixels of the frame, with a binarizer over it. Each level of the pyramid is half the
+ * size of the one below it and averaged from it, 2x2 pixels at a time. Levels are averaged in
+ * the camera's orientation, row by row, into buffers that are reused from frame to frame, and
+ * rotated only when the binarizer reads them.
+ */
+class DownsampledRegion {
+    private final int mFactor;
+    private final DownsampledRegion mFiner;
+    private byte[] mPixels;
+    private ReusableHybridBinarizer mBinarizer;
+    private int mWidth;
+    private int mHeight;
+    private int mRotation;
+    private int mCropLeft;
+    private int mCropTop;
+    private int mCropWidth;
+    private int mCropHeight;
+    // The region in the camera's orientation, in frame pixels.
+    private int mSensorLeft;
+    private int mSensorTop;
+    private int mSensorWidth;
+    private int mSensorHeight;
+    // Frame pixels left out at the left and top of the region, in rotated coordinates, because
+    // the region is not a multiple of the factor.
+    private int mOffsetX;
+    private int mOffsetY;
+    private long mDownsampleTime;
+
+    /**
+     * @param finer the level below, half the factor of this one, or null to average the frame
+     *              itself by 2
+     */
+    DownsampledRegion(DownsampledRegion finer) {
+        mFactor = finer != null ? finer.mFactor * 2 : 2;
+        mFiner = finer;
+    }
+
+    /** Nanoseconds spent averaging the region in the last {@link #prepare}. */
+    long getDownsampleTime() {
+        return mDownsampleTime;
+    }
+
+    /**
+     * Moves the points of a barcode found in the shrunk region to where they are in the region
+     * at full resolution, so results look the same whichever resolution they were found at.
+     */
+    void toRegionCoordinates(Result rawResult) {
+        ResultPoint[] points = rawResult.getResultPoints();
+        if (points == null) {
+            return;
+        }
+        for (int i = 0; i < points.length; i++) {
+            if (points[i] != null) {
+                points[i] = new ResultPoint(points[i].getX() * mFactor + mOffsetX,
+                        points[i].getY() * mFactor + mOffsetY);
+            }
+        }
+    }
+
+    ReusableHybridBinarizer getBinarizer() {
+        return mBinarizer;
+    }
+
+    /**
+     * Averages a region of the frame, in rotated coordinates like the frame's crop region, and
+     * points the binarizer at the result. The level below must have been prepared with the same
+     * frame and region first.
+     *
+     * @return the binarizer, or null if the region does not fit the frame
+     */
+    ReusableHybridBinarizer prepare(PreviewFrame frame, int cropLeft, int cropTop, int cropWidth, int cropHeight) {
+        mDownsampleTime = 0;
+        if (mBinarizer == null || frame.getWidth() != mWidth || frame.getHeight() != mHeight
+                || frame.getRotation() != mRotation || cropLeft != mCropLeft || cropTop != mCropTop
+                || cropWidth != mCropWidth || cropHeight != mCropHeight) {
+            mBinarizer = null;
+            if (!setRegion(frame, cropLeft, cropTop, cropWidth, cropHeight)) {
+                return null;
+            }
+            int width = mSensorWidth / mFactor;
+            int height = mSensorHeight / mFactor;
+            mPixels = new byte[width * height];
+            setOffsets(frame.getRotation());
+            boolean sideways = frame.getRotation() == 90 || frame.getRotation() == 270;
+            mBinarizer = new ReusableHybridBinarizer(new RotatedLuminanceSource(mPixels, width, height,
+                    frame.getRotation(), 0, 0, sideways ? height : width, sideways ? width : height));
+            mWidth = frame.getWidth();
+            mHeight = frame.getHeight();
+            mRotation = frame.getRotation();
+            mCropLeft = cropLeft;
+            mCropTop = cropTop;
+            mCropWidth = cropWidth;
+            mCropHeight = cropHeight;
+        }
+
+        long start = System.nanoTime();
+        ScannerTrace.beginSection(ScannerTrace.ROTATE_CROP);
+        try {
+            if (mFiner != null) {
+                downsample(mFiner.mPixels, mFiner.mSensorWidth / mFiner.mFactor, 0, 0);
+            } else {
+                downsample(frame.getData(), frame.getWidth(), mSensorLeft, mSensorTop);
+            }
+        } finally {
+            ScannerTrace.endSection();
+        }
+        mDownsampleTime = System.nanoTime() - start;
+        mBinarizer.reset();
+        return mBinarizer;
+    }
+
+    /** Finds the region in the camera's orientation, see {@link PreviewFrame#getSensorCropLeft()}. */
+    private boolean setRegion(PreviewFrame frame, int cropLeft, int cropTop, int cropWidth, int cropHeight) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        switch (frame.getRotation()) {
+            case 0:
+                mSensorLeft = cropLeft;
+                mSensorTop = cropTop;
+                mSensorWidth = cropWidth;
+                mSensorHeight = cropHeight;
+                break;
+            case 90:
+                mSensorLeft = cropTop;
+                mSensorTop = height - cropLeft - cropWidth;
+                mSensorWidth = cropHeight;
+                mSensorHeight = cropWidth;
+                break;
+            case 180:
+                mSensorLeft = width - cropLeft - cropWidth;
+                mSensorTop = height - cropTop - cropHeight;
+                mSensorWidth = cropWidth;
+                mSensorHeight = cropHeight;
+                break;
+            case 270:
+                mSensorLeft = width - cropTop - cropHeight;
+                mSensorTop = cropLeft;
+                mSensorWidth = cropHeight;
+                mSensorHeight = cropWidth;
+                break;
+            default:
+                return false;
+        }
+        return mSensorLeft >= 0 && mSensorTop >= 0 && mSensorLeft + mSensorWidth <= width
+                && mSensorTop + mSensorHeight <= height
+                && mSensorWidth >= mFactor && mSensorHeight >= mFactor;
+    }
+
+    private void setOffsets(int rotation) {
+        // The pixels left over are at the right and bottom in the camera's orientation.
+        int restX = mSensorWidth % mFactor;
+        int restY = mSensorHeight % mFactor;
+        mOffsetX = rotation == 90 ? restY : rotation == 180 ? restX : 0;
+        mOffsetY = rotation == 180 ? restY : rotation == 270 ? restX : 0;
+    }
+
+    /** Averages 2x2 pixels of the source into each pixel of this level. */
+    private void downsample(byte[] source, int stride, int left, int top) {
+        int width = mSensorWidth / mFactor;
+        int height = mSensorHeight / mFactor;
+        byte[] pixels = mPixels;
+        for (int y = 0; y < height; y++) {
+            int offset = (top + y * 2) * stride + left;
+            int out = y * width;
+            for (int x = 0; x < width; x++, offset += 2) {
+                int sum = (source[offset] & 0xFF) + (source[offset + 1] & 0xFF)
+                        + (source[offset + stride] & 0xFF) + (source[offset + stride + 1] & 0xFF);
+                pixels[out + x] = (byte) (sum >> 2);
+            }
+        }
+    }
+}
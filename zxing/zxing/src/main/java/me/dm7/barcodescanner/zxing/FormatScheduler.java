@@ -0,0 +1,150 @@
+package me.dm7.barcodescanner.zxing;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Keeps track of which formats are actually found, so {@link ZXingFrameDecoder} can look for
+ * those on every frame and for the others only now and then. A store that scans EAN-13 nearly
+ * all the time then stops paying for the QR code, Data Matrix and PDF417 readers on every frame,
+ * while a barcode in another format is still found within a few frames.
+ *
+ * Until a few barcodes were found every format is looked for on every frame. Counts are halved
+ * once they add up to {@link #MAX_HITS}, so formats that fall out of use are dropped again. Apps
+ * can keep the counts across launches with {@link #getHitCounts()} and {@link #setHitCounts}.
+ */
+public class FormatScheduler {
+    public static final int DEFAULT_MIN_HITS = 3;
+    public static final float DEFAULT_MIN_SHARE = 0.1f;
+    public static final int DEFAULT_PROBE_INTERVAL = 8;
+    public static final int MAX_HITS = 256;
+
+    private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+    private static final int ALL_FORMATS = (1 << FORMATS.length) - 1;
+
+    private final int[] mHits = new int[FORMATS.length];
+    private int mTotalHits;
+    private int mLikelyFormats = ALL_FORMATS;
+    private int mMinHits = DEFAULT_MIN_HITS;
+    private float mMinShare = DEFAULT_MIN_SHARE;
+    private int mProbeInterval = DEFAULT_PROBE_INTERVAL;
+    private int mFrames;
+
+    /** How many barcodes have to be found before formats are left out of any frame. */
+    public synchronized void setMinHits(int minHits) {
+        mMinHits = minHits;
+        updateLikelyFormats();
+    }
+
+    public synchronized int getMinHits() {
+        return mMinHits;
+    }
+
+    /** The share of the barcodes found, from 0 to 1, that makes a format one to look for on every frame. */
+    public synchronized void setMinShare(float minShare) {
+        mMinShare = minShare;
+        updateLikelyFormats();
+    }
+
+    public synchronized float getMinShare() {
+        return mMinShare;
+    }
+
+    /** Every how many frames the other formats are looked for as well, 1 for every frame. */
+    public synchronized void setProbeInterval(int probeInterval) {
+        if (probeInterval < 1) {
+            throw new IllegalArgumentException("Probe interval must be at least 1.");
+        }
+        mProbeInterval = probeInterval;
+    }
+
+    public synchronized int getProbeInterval() {
+        return mProbeInterval;
+    }
+
+    /** How often each format was found, halved from time to time. */
+    public synchronized Map<BarcodeFormat, Integer> getHitCounts() {
+        Map<BarcodeFormat, Integer> hitCounts = new EnumMap<BarcodeFormat, Integer>(BarcodeFormat.class);
+        for (int i = 0; i < FORMATS.length; i++) {
+            if (mHits[i] > 0) {
+                hitCounts.put(FORMATS[i], mHits[i]);
+            }
+        }
+        return hitCounts;
+    }
+
+    /** Starts from counts saved with {@link #getHitCounts()}, e.g. in an earlier session. */
+    public synchronized void setHitCounts(Map<BarcodeFormat, Integer> hitCounts) {
+        mTotalHits = 0;
+        for (int i = 0; i < FORMATS.length; i++) {
+            Integer hits = hitCounts.get(FORMATS[i]);
+            mHits[i] = hits != null ? Math.max(0, hits) : 0;
+            mTotalHits += mHits[i];
+        }
+        while (mTotalHits >= MAX_HITS) {
+            halveHits();
+        }
+        updateLikelyFormats();
+    }
+
+    /** Forgets every barcode found so far. */
+    public synchronized void reset() {
+        setHitCounts(new EnumMap<BarcodeFormat, Integer>(BarcodeFormat.class));
+    }
+
+    public synchronized boolean isLikely(BarcodeFormat format) {
+        return (mLikelyFormats & (1 << format.ordinal())) != 0;
+    }
+
+    synchronized void recordHit(BarcodeFormat format) {
+        mHits[format.ordinal()]++;
+        mTotalHits++;
+        if (mTotalHits >= MAX_HITS) {
+            halveHits();
+        }
+        updateLikelyFormats();
+    }
+
+    /** The formats to look for on every frame, one bit per {@link BarcodeFormat} ordinal. */
+    synchronized int getLikelyFormats() {
+        return mLikelyFormats;
+    }
+
+    /** Counts a frame, and returns whether the other formats should be looked for in it. */
+    synchronized boolean nextFrameProbes() {
+        mFrames = (mFrames + 1) % mProbeInterval;
+        return mFrames == 0;
+    }
+
+    static int toMask(Iterable<BarcodeFormat> formats) {
+        int mask = 0;
+        for (BarcodeFormat format : formats) {
+            mask |= 1 << format.ordinal();
+        }
+        return mask;
+    }
+
+    private void halveHits() {
+        mTotalHits = 0;
+        for (int i = 0; i < mHits.length; i++) {
+            mHits[i] /= 2;
+            mTotalHits += mHits[i];
+        }
+    }
+
+    private void updateLikelyFormats() {
+        if (mTotalHits < mMinHits) {
+            mLikelyFormats = ALL_FORMATS;
+            return;
+        }
+        int likely = 0;
+        for (int i = 0; i < mHits.length; i++) {
+            if (mHits[i] > 0 && mHits[i] >= mMinShare * mTotalHits) {
+                likely |= 1 << i;
+            }
+        }
+        mLikelyFormats = likely;
+    }
+}
@@ -0,0 +1,187 @@
+package me.dm7.barcodescanner.zxing;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * The readers {@link com.google.zxing.MultiFormatReader} would try one after the other, run at
+ * the same time instead: the 1D readers as one task and each 2D reader as another, all on the
+ * same binarized frame. The first to find a barcode wins, tasks that have not started yet skip
+ * the frame and the ones still running finish in the background.
+ *
+ * The 2D readers only read the black matrix, which is binarized up front. The 1D readers
+ * binarize row by row with the binarizer's buffers, which is fine as long as they are a single
+ * task. Tasks may still be running after a result was returned, so the binarizer must not be
+ * reused before {@link Batch#awaitAll()}. The 1D readers may also still read the frame after it
+ * went back to the camera, but whatever they find then is thrown away.
+ */
+class ParallelReaders {
+    private static final BarcodeFormat[] ONE_D_FORMATS = {
+            BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8,
+            BarcodeFormat.CODABAR, BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODE_128,
+            BarcodeFormat.ITF, BarcodeFormat.RSS_14, BarcodeFormat.RSS_EXPANDED
+    };
+
+    /** The 1D formats as a mask, see {@link FormatScheduler#toMask}. */
+    static final int ONE_D_MASK = FormatScheduler.toMask(Arrays.asList(ONE_D_FORMATS));
+
+    private static final boolean MULTI_CORE = Runtime.getRuntime().availableProcessors() > 1;
+
+    private final Map<DecodeHintType,Object> mHints;
+    private final Reader[] mReaders;
+
+    ParallelReaders(Collection<BarcodeFormat> formats, Map<DecodeHintType,Object> hints) {
+        mHints = hints;
+
+        boolean oneD = hasOneDFormat(formats);
+
+        // In the order MultiFormatReader uses, which queues the tasks when there are more of
+        // them than threads.
+        List<Reader> readers = new ArrayList<Reader>();
+        boolean tryHarder = hints.containsKey(DecodeHintType.TRY_HARDER);
+        if (oneD && !tryHarder) {
+            readers.add(new MultiFormatOneDReader(hints));
+        }
+        if (formats.contains(BarcodeFormat.QR_CODE)) {
+            readers.add(new QRCodeReader());
+        }
+        if (formats.contains(BarcodeFormat.DATA_MATRIX)) {
+            readers.add(new DataMatrixReader());
+        }
+        if (formats.contains(BarcodeFormat.AZTEC)) {
+            readers.add(new AztecReader());
+        }
+        if (formats.contains(BarcodeFormat.PDF_417)) {
+            readers.add(new PDF417Reader());
+        }
+        if (formats.contains(BarcodeFormat.MAXICODE)) {
+            readers.add(new MaxiCodeReader());
+        }
+        if (oneD && tryHarder) {
+            readers.add(new MultiFormatOneDReader(hints));
+        }
+        mReaders = readers.toArray(new Reader[readers.size()]);
+    }
+
+    static boolean hasOneDFormat(Collection<BarcodeFormat> formats) {
+        for (BarcodeFormat format : ONE_D_FORMATS) {
+            if (formats.contains(format)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Whether there is more than one task to run and more than one core to run them on. */
+    boolean isParallel() {
+        return mReaders.length > 1 && MULTI_CORE;
+    }
+
+    /**
+     * Decodes the bitmap with every reader at once.
+     *
+     * @return the readers' batch, which holds the result once {@link Batch#await()} returns
+     */
+    Batch decode(final BinaryBitmap bitmap, Executor executor) {
+        final Batch batch = new Batch();
+        try {
+            bitmap.getBlackMatrix();
+        } catch (NotFoundException e) {
+            return batch;
+        }
+
+        batch.mStarted = mReaders.length;
+        for (final Reader reader : mReaders) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    batch.finish(batch.isDone() ? null : decode(reader, bitmap));
+                }
+            });
+        }
+        return batch;
+    }
+
+    private Result decode(Reader reader, BinaryBitmap bitmap) {
+        try {
+            return reader.decode(bitmap, mHints);
+        } catch (ReaderException re) {
+            // continue
+        } catch (NullPointerException npe) {
+            // This is terrible
+        } catch (ArrayIndexOutOfBoundsException aoe) {
+
+        } finally {
+            reader.reset();
+        }
+        return null;
+    }
+
+    /** The readers working on one frame. */
+    static class Batch {
+        private int mStarted;
+        private int mFinished;
+        private Result mResult;
+
+        synchronized void finish(Result result) {
+            mFinished++;
+            if (mResult == null && result != null) {
+                mResult = result;
+            }
+            notifyAll();
+        }
+
+        synchronized boolean isDone() {
+            return mResult != null;
+        }
+
+        /** Waits until a reader found a barcode or all of them gave up, and returns the barcode. */
+        synchronized Result await() {
+            boolean interrupted = false;
+            while (mResult == null && mFinished < mStarted) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return mResult;
+        }
+
+        /** Waits until every reader is done with the frame. */
+        synchronized void awaitAll() {
+            boolean interrupted = false;
+            while (mFinished < mStarted) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
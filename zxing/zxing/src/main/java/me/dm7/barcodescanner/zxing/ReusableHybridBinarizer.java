@@ -0,0 +1,352 @@
+package me.dm7.barcodescanner.zxing;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+
+import me.dm7.barcodescanner.core.ScannerTrace;
+
+/**
+ * Computes the same black matrix as {@link com.google.zxing.common.HybridBinarizer}, but into
+ * buffers that are allocated once and reused for every frame. Call {@link #reset()} whenever
+ * the pixels of the luminance source changed. The buffers are only allocated when the matrix
+ * is first asked for, so a binarizer that is only read row by row, like the rotated copy the
+ * 1D readers make when trying harder, costs no more than a row.
+ *
+ * Each {@link #getBlackMatrix()} returns the same {@link BitMatrix} instance, so a matrix
+ * from an earlier frame must not be used after the next reset. The {@link BinaryBitmap} from
+ * {@link #getBinaryBitmap()} is kept as well.
+ *
+ * With {@link #setGlobalHistogram(boolean)} the matrix is computed like
+ * {@link GlobalHistogramBinarizer} does instead, with a single threshold for the whole crop.
+ */
+public class ReusableHybridBinarizer extends GlobalHistogramBinarizer {
+    // Same constants as HybridBinarizer.
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+    private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+    // Same constants as GlobalHistogramBinarizer.
+    private static final int LUMINANCE_SHIFT = 3;
+    private static final int LUMINANCE_BUCKETS = 1 << (8 - LUMINANCE_SHIFT);
+
+    // Whether the source is large enough for the local thresholds.
+    private final boolean mLocal;
+    private final int mSubWidth;
+    private final int mSubHeight;
+    private byte[] mLuminances;
+    // Black point of block (x, y) is mBlackPoints[y * mSubWidth + x].
+    private int[] mBlackPoints;
+    private BitMatrix mMatrix;
+    private BinaryBitmap mBitmap;
+    private final int[] mBuckets = new int[LUMINANCE_BUCKETS];
+    private boolean mGlobalHistogram;
+    private boolean mValid;
+    // The global histogram had no dark and light peaks to put a threshold between.
+    private boolean mNotFound;
+    private long mCopyTime;
+    private long mBinarizeTime;
+
+    public ReusableHybridBinarizer(LuminanceSource source) {
+        super(source);
+        int width = source.getWidth();
+        int height = source.getHeight();
+        // Too small for the local thresholds falls back to the global histogram.
+        mLocal = width >= MINIMUM_DIMENSION && height >= MINIMUM_DIMENSION;
+        mSubWidth = (width >> BLOCK_SIZE_POWER) + ((width & BLOCK_SIZE_MASK) != 0 ? 1 : 0);
+        mSubHeight = (height >> BLOCK_SIZE_POWER) + ((height & BLOCK_SIZE_MASK) != 0 ? 1 : 0);
+    }
+
+    /** Marks the black matrix as stale, it is recomputed on the next {@link #getBlackMatrix()}. */
+    public void reset() {
+        mValid = false;
+        mNotFound = false;
+        mCopyTime = 0;
+        mBinarizeTime = 0;
+    }
+
+    /**
+     * Whether to threshold the whole crop at the black point of its luminance histogram, like
+     * {@link GlobalHistogramBinarizer}, instead of each block at the black point of the blocks
+     * around it. Set it after a {@link #reset()}, before the matrix is first asked for.
+     */
+    public void setGlobalHistogram(boolean globalHistogram) {
+        mGlobalHistogram = globalHistogram;
+    }
+
+    public boolean isGlobalHistogram() {
+        return mGlobalHistogram;
+    }
+
+    /**
+     * Nanoseconds spent copying the rotated crop out of the luminance source since the last
+     * reset, 0 if the black matrix was not needed.
+     */
+    public long getCopyTime() {
+        return mCopyTime;
+    }
+
+    /** Nanoseconds spent thresholding since the last reset, 0 if the black matrix was not needed. */
+    public long getBinarizeTime() {
+        return mBinarizeTime;
+    }
+
+    /**
+     * A bitmap of this binarizer for the readers. It holds on to the black matrix once a reader
+     * asked for it, and does not ask again on the next frame, so call {@link #getBlackMatrix()}
+     * after a reset before handing it to a reader that needs the matrix. Sources too small for
+     * the local thresholds get a new matrix every frame, and with it a new bitmap.
+     */
+    public BinaryBitmap getBinaryBitmap() {
+        if (!mLocal) {
+            return new BinaryBitmap(this);
+        }
+        if (mBitmap == null) {
+            mBitmap = new BinaryBitmap(this);
+        }
+        return mBitmap;
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        if (!mLocal) {
+            if (mNotFound) {
+                throw NotFoundException.getNotFoundInstance();
+            }
+            if (!mValid) {
+                try {
+                    mMatrix = super.getBlackMatrix();
+                } catch (NotFoundException e) {
+                    mNotFound = true;
+                    throw e;
+                }
+                mValid = true;
+            }
+            return mMatrix;
+        }
+        if (mMatrix == null) {
+            mLuminances = new byte[getWidth() * getHeight()];
+            mBlackPoints = new int[mSubWidth * mSubHeight];
+            mMatrix = new BitMatrix(getWidth(), getHeight());
+        }
+        if (mNotFound) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        if (!mValid) {
+            long start = System.nanoTime();
+            ScannerTrace.beginSection(ScannerTrace.ROTATE_CROP);
+            try {
+                LuminanceSource source = getLuminanceSource();
+                if (source instanceof RotatedLuminanceSource) {
+                    ((RotatedLuminanceSource) source).getMatrix(mLuminances);
+                } else {
+                    System.arraycopy(source.getMatrix(), 0, mLuminances, 0, mLuminances.length);
+                }
+            } finally {
+                ScannerTrace.endSection();
+            }
+            long copied = System.nanoTime();
+            ScannerTrace.beginSection(ScannerTrace.BINARIZE);
+            try {
+                mMatrix.clear();
+                if (mGlobalHistogram) {
+                    thresholdGlobally();
+                } else {
+                    calculateBlackPoints();
+                    calculateThresholdForBlocks();
+                }
+            } catch (NotFoundException e) {
+                mNotFound = true;
+                throw e;
+            } finally {
+                ScannerTrace.endSection();
+                mCopyTime = copied - start;
+                mBinarizeTime = System.nanoTime() - copied;
+            }
+            mValid = true;
+        }
+        return mMatrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new ReusableHybridBinarizer(source);
+    }
+
+    /** Same threshold as GlobalHistogramBinarizer, from the middle of four rows of the crop. */
+    private void thresholdGlobally() throws NotFoundException {
+        byte[] luminances = mLuminances;
+        int[] buckets = mBuckets;
+        int width = getWidth();
+        int height = getHeight();
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = 0;
+        }
+        for (int y = 1; y < 5; y++) {
+            int offset = (height * y / 5) * width;
+            int right = width * 4 / 5;
+            for (int x = width / 5; x < right; x++) {
+                buckets[(luminances[offset + x] & 0xFF) >> LUMINANCE_SHIFT]++;
+            }
+        }
+        int blackPoint = estimateBlackPoint(buckets);
+
+        BitMatrix matrix = mMatrix;
+        for (int y = 0, offset = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, offset++) {
+                if ((luminances[offset] & 0xFF) < blackPoint) {
+                    matrix.set(x, y);
+                }
+            }
+        }
+    }
+
+    /** The valley between the dark and the light peak, same as GlobalHistogramBinarizer. */
+    private static int estimateBlackPoint(int[] buckets) throws NotFoundException {
+        int numBuckets = buckets.length;
+        int maxBucketCount = 0;
+        int firstPeak = 0;
+        int firstPeakSize = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            if (buckets[x] > firstPeakSize) {
+                firstPeak = x;
+                firstPeakSize = buckets[x];
+            }
+            if (buckets[x] > maxBucketCount) {
+                maxBucketCount = buckets[x];
+            }
+        }
+
+        // The second peak is the one furthest from the first, weighted by its size.
+        int secondPeak = 0;
+        int secondPeakScore = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            int distanceToBiggest = x - firstPeak;
+            int score = buckets[x] * distanceToBiggest * distanceToBiggest;
+            if (score > secondPeakScore) {
+                secondPeak = x;
+                secondPeakScore = score;
+            }
+        }
+        if (firstPeak > secondPeak) {
+            int temp = firstPeak;
+            firstPeak = secondPeak;
+            secondPeak = temp;
+        }
+        if (secondPeak - firstPeak <= numBuckets / 16) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+
+        // The emptiest bucket between the peaks, leaning towards the light one.
+        int bestValley = secondPeak - 1;
+        int bestValleyScore = -1;
+        for (int x = secondPeak - 1; x > firstPeak; x--) {
+            int fromFirst = x - firstPeak;
+            int score = fromFirst * fromFirst * (secondPeak - x) * (maxBucketCount - buckets[x]);
+            if (score > bestValleyScore) {
+                bestValley = x;
+                bestValleyScore = score;
+            }
+        }
+        return bestValley << LUMINANCE_SHIFT;
+    }
+
+    private void calculateBlackPoints() {
+        byte[] luminances = mLuminances;
+        int[] blackPoints = mBlackPoints;
+        int width = getWidth();
+        int height = getHeight();
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < mSubHeight; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            for (int x = 0; x < mSubWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int sum = 0;
+                int min = 0xFF;
+                int max = 0;
+                for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        int pixel = luminances[offset + xx] & 0xFF;
+                        sum += pixel;
+                        if (pixel < min) {
+                            min = pixel;
+                        }
+                        if (pixel > max) {
+                            max = pixel;
+                        }
+                    }
+                    // Once the dynamic range is met, only the sum is needed for the other rows.
+                    if (max - min > MIN_DYNAMIC_RANGE) {
+                        for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+                            for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                                sum += luminances[offset + xx] & 0xFF;
+                            }
+                        }
+                    }
+                }
+
+                int average = sum >> (BLOCK_SIZE_POWER * 2);
+                if (max - min <= MIN_DYNAMIC_RANGE) {
+                    // A flat block is assumed to be white, unless its neighbours say otherwise.
+                    average = min / 2;
+                    if (y > 0 && x > 0) {
+                        int index = y * mSubWidth + x;
+                        int averageNeighborBlackPoint = (blackPoints[index - mSubWidth]
+                                + 2 * blackPoints[index - 1] + blackPoints[index - mSubWidth - 1]) / 4;
+                        if (min < averageNeighborBlackPoint) {
+                            average = averageNeighborBlackPoint;
+                        }
+                    }
+                }
+                blackPoints[y * mSubWidth + x] = average;
+            }
+        }
+    }
+
+    private void calculateThresholdForBlocks() {
+        int[] blackPoints = mBlackPoints;
+        int subWidth = mSubWidth;
+        int width = getWidth();
+        int height = getHeight();
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < mSubHeight; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            int top = cap(y, 2, mSubHeight - 3);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int left = cap(x, 2, subWidth - 3);
+                // Average black point of the 5x5 blocks around this one.
+                int sum = 0;
+                for (int z = -2; z <= 2; z++) {
+                    int row = (top + z) * subWidth + left;
+                    sum += blackPoints[row - 2] + blackPoints[row - 1] + blackPoints[row]
+                            + blackPoints[row + 1] + blackPoints[row + 2];
+                }
+                thresholdBlock(xoffset, yoffset, sum / 25, width);
+            }
+        }
+    }
+
+    private void thresholdBlock(int xoffset, int yoffset, int threshold, int stride) {
+        byte[] luminances = mLuminances;
+        BitMatrix matrix = mMatrix;
+        for (int y = 0, offset = yoffset * stride + xoffset; y < BLOCK_SIZE; y++, offset += stride) {
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                // <= so that black pixels of 0 stay black even if the threshold is 0.
+                if ((luminances[offset + x] & 0xFF) <= threshold) {
+                    matrix.set(xoffset + x, yoffset + y);
+                }
+            }
+        }
+    }
+
+    private static int cap(int value, int min, int max) {
+        return value < min ? min : value > max ? max : value;
+    }
+}
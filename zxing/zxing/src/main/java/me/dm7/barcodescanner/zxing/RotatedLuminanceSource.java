@@ -0,0 +1,179 @@
+package me.dm7.barcodescanner.zxing;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A {@link LuminanceSource} that presents the Y plane of an unrotated preview frame as if it
+ * had been rotated clockwise by 0, 90, 180 or 270 degrees and then cropped. Pixels are read
+ * straight from the original frame, so no rotated copy of the frame is ever made.
+ */
+public class RotatedLuminanceSource extends LuminanceSource {
+    private static final int BLOCK_SIZE = 32;
+
+    private byte[] mYuvData;
+    // Pixel (x, y) of this source is mYuvData[mStart + x * mStepX + y * mStepY].
+    private final int mStart;
+    private final int mStepX;
+    private final int mStepY;
+
+    /**
+     * @param yuvData the unrotated frame, luminance plane first
+     * @param dataWidth width of the unrotated frame
+     * @param dataHeight height of the unrotated frame
+     * @param rotation clockwise rotation in degrees, one of 0, 90, 180 or 270
+     * @param left left edge of the crop, in rotated coordinates
+     * @param top top edge of the crop, in rotated coordinates
+     * @param width width of the crop
+     * @param height height of the crop
+     */
+    public RotatedLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int rotation,
+                                  int left, int top, int width, int height) {
+        super(width, height);
+
+        int rotatedWidth = dataWidth;
+        int rotatedHeight = dataHeight;
+        int origin;
+        int stepX;
+        int stepY;
+        switch (rotation) {
+            case 0:
+                origin = 0;
+                stepX = 1;
+                stepY = dataWidth;
+                break;
+            case 90:
+                rotatedWidth = dataHeight;
+                rotatedHeight = dataWidth;
+                origin = (dataHeight - 1) * dataWidth;
+                stepX = -dataWidth;
+                stepY = 1;
+                break;
+            case 180:
+                origin = (dataHeight - 1) * dataWidth + dataWidth - 1;
+                stepX = -1;
+                stepY = -dataWidth;
+                break;
+            case 270:
+                rotatedWidth = dataHeight;
+                rotatedHeight = dataWidth;
+                origin = dataWidth - 1;
+                stepX = dataWidth;
+                stepY = -1;
+                break;
+            default:
+                throw new IllegalArgumentException("Rotation must be 0, 90, 180 or 270 degrees.");
+        }
+
+        if (left < 0 || top < 0 || left + width > rotatedWidth || top + height > rotatedHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+
+        mYuvData = yuvData;
+        mStart = origin + left * stepX + top * stepY;
+        mStepX = stepX;
+        mStepY = stepY;
+    }
+
+    private RotatedLuminanceSource(byte[] yuvData, int start, int stepX, int stepY, int width, int height) {
+        super(width, height);
+        mYuvData = yuvData;
+        mStart = start;
+        mStepX = stepX;
+        mStepY = stepY;
+    }
+
+    /**
+     * Points this source at another frame of the same size, so one instance can be reused for
+     * every frame while the preview size and crop stay the same.
+     */
+    void setYuvData(byte[] yuvData) {
+        mYuvData = yuvData;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        int index = mStart + y * mStepY;
+        if (mStepX == 1) {
+            System.arraycopy(mYuvData, index, row, 0, width);
+            return row;
+        }
+        for (int x = 0; x < width; x++) {
+            row[x] = mYuvData[index];
+            index += mStepX;
+        }
+        return row;
+    }
+
+    /** Luminance of pixel (x, y), from 0 to 255. */
+    int getLuminance(int x, int y) {
+        return mYuvData[mStart + x * mStepX + y * mStepY] & 0xFF;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        return getMatrix(new byte[getWidth() * getHeight()]);
+    }
+
+    /** Same as {@link #getMatrix()}, but writes into the given array of width * height bytes. */
+    public byte[] getMatrix(byte[] matrix) {
+        int width = getWidth();
+        int height = getHeight();
+
+        if (mStepX == 1) {
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(mYuvData, mStart + y * mStepY, matrix, y * width, width);
+            }
+            return matrix;
+        }
+
+        // Walk the frame in tiles so the strided reads stay in cache.
+        for (int blockY = 0; blockY < height; blockY += BLOCK_SIZE) {
+            int blockYEnd = Math.min(blockY + BLOCK_SIZE, height);
+            for (int blockX = 0; blockX < width; blockX += BLOCK_SIZE) {
+                int blockXEnd = Math.min(blockX + BLOCK_SIZE, width);
+                for (int y = blockY; y < blockYEnd; y++) {
+                    int outIndex = y * width + blockX;
+                    int index = mStart + blockX * mStepX + y * mStepY;
+                    for (int x = blockX; x < blockXEnd; x++) {
+                        matrix[outIndex++] = mYuvData[index];
+                        index += mStepX;
+                    }
+                }
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || left + width > getWidth() || top + height > getHeight()) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        return new RotatedLuminanceSource(mYuvData, mStart + left * mStepX + top * mStepY,
+                mStepX, mStepY, width, height);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        // New (x, y) is old (width - 1 - y, x).
+        return new RotatedLuminanceSource(mYuvData, mStart + (getWidth() - 1) * mStepX,
+                mStepY, -mStepX, getHeight(), getWidth());
+    }
+}
@@ -0,0 +1,107 @@
+package me.dm7.barcodescanner.zxing;
+
+import com.google.zxing.common.BitArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.dm7.barcodescanner.core.PreviewFrame;
+
+/**
+ * The luminance source and binarizer for decoding frames on one thread, with one decode tier.
+ * Both keep their buffers from frame to frame and are only rebuilt when the preview size,
+ * rotation or crop changes, so decoding a frame does not allocate frame sized arrays.
+ */
+class ZXingDecodeContext {
+    private RotatedLuminanceSource mSource;
+    private ReusableHybridBinarizer mBinarizer;
+    private int mWidth;
+    private int mHeight;
+    private int mRotation;
+    private int mCropLeft;
+    private int mCropTop;
+    private int mCropWidth;
+    private int mCropHeight;
+    private ParallelReaders.Batch mPendingReaders;
+    private BitArray mRow;
+    private final List<DownsampledRegion> mDownsampledRegions = new ArrayList<DownsampledRegion>();
+
+    /** A row of at least the given width for binarizing single lines into. */
+    BitArray getRow(int width) {
+        if (mRow == null || mRow.getSize() < width) {
+            mRow = new BitArray(width);
+        }
+        return mRow;
+    }
+
+    /** The region the binarizer was last pointed at by {@link #prepare}. */
+    RotatedLuminanceSource getSource() {
+        return mSource;
+    }
+
+    /** Top edge of the region the binarizer was last pointed at, in rotated coordinates. */
+    int getCropTop() {
+        return mCropTop;
+    }
+
+    /** Readers that may still be working on the binarized frame, waited for before the next one. */
+    void setPendingReaders(ParallelReaders.Batch pendingReaders) {
+        mPendingReaders = pendingReaders;
+    }
+
+    /**
+     * The level of the pyramid shrunk by the given power of two, for decoding the frame at a
+     * lower resolution. Its buffers are kept for the next frame like those of this context.
+     */
+    DownsampledRegion getDownsampledRegion(int factor) {
+        awaitPendingReaders();
+        DownsampledRegion region = null;
+        for (int level = 0; 2 << level <= factor; level++) {
+            if (level == mDownsampledRegions.size()) {
+                mDownsampledRegions.add(new DownsampledRegion(region));
+            }
+            region = mDownsampledRegions.get(level);
+        }
+        return region;
+    }
+
+    private void awaitPendingReaders() {
+        if (mPendingReaders != null) {
+            mPendingReaders.awaitAll();
+            mPendingReaders = null;
+        }
+    }
+
+    /**
+     * Points the binarizer at a region of the frame, in rotated coordinates like the frame's
+     * crop region.
+     *
+     * @return the binarizer, or null if the region does not fit the frame
+     */
+    ReusableHybridBinarizer prepare(PreviewFrame frame, int cropLeft, int cropTop, int cropWidth, int cropHeight) {
+        awaitPendingReaders();
+        if (mBinarizer == null || frame.getWidth() != mWidth || frame.getHeight() != mHeight
+                || frame.getRotation() != mRotation || cropLeft != mCropLeft || cropTop != mCropTop
+                || cropWidth != mCropWidth || cropHeight != mCropHeight) {
+            mBinarizer = null;
+            try {
+                mSource = new RotatedLuminanceSource(frame.getData(), frame.getWidth(), frame.getHeight(),
+                        frame.getRotation(), cropLeft, cropTop, cropWidth, cropHeight);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            mBinarizer = new ReusableHybridBinarizer(mSource);
+            mWidth = frame.getWidth();
+            mHeight = frame.getHeight();
+            mRotation = frame.getRotation();
+            mCropLeft = cropLeft;
+            mCropTop = cropTop;
+            mCropWidth = cropWidth;
+            mCropHeight = cropHeight;
+        } else {
+            mSource.setYuvData(frame.getData());
+        }
+        mBinarizer.reset();
+        return mBinarizer;
+    }
+}
@@ -0,0 +1,729 @@
+package me.dm7.barcodescanner.zxing;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.google.zxing.oned.OneDReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import me.dm7.barcodescanner.core.FrameDecoder;
+import me.dm7.barcodescanner.core.PreviewFrame;
+import me.dm7.barcodescanner.core.ScanLines;
+import me.dm7.barcodescanner.core.ScannerTrace;
+
+/**
+ * Decodes frames with ZXing, every frame the same way unless {@link #setDecodeTiers} asks it to
+ * escalate through a list of {@link DecodeTier}s: cheap passes over the likely formats first,
+ * and more expensive ones only after those keep coming up empty.
+ * The tier each frame was decoded with is reported through {@link PreviewFrame#setDecodeTier}.
+ * A frame that came up empty is reported as not the final attempt through
+ * {@link PreviewFrame#setFinalAttempt} until every tier has looked for all of its formats since
+ * the last barcode was found, so a still scene keeps being decoded until then.
+ */
+public class ZXingFrameDecoder implements FrameDecoder<Result> {
+    /** Pyramid levels are only tried while the short side of the region is at least this long. */
+    public static final int MIN_PYRAMID_SIZE = 160;
+    public static final int MAX_PYRAMID_LEVELS = 3;
+
+    private static final int MAX_READER_THREADS = 4;
+
+    private final QRCodeMultiReader mQRCodeMultiReader = new QRCodeMultiReader();
+    private List<BarcodeFormat> mFormats;
+    private List<DecodeTier> mDecodeTiers = DecodeTier.SINGLE_TIER;
+    private volatile Pass[] mPasses;
+    private volatile FormatScheduler mFormatScheduler;
+    private volatile boolean mParallelReaders;
+    private volatile BinarizerSelector mBinarizerSelector;
+    private volatile int mPyramidLevels;
+    private Executor mReaderExecutor;
+    // The tier for the next frame, and how many frames in a row it has not found anything.
+    private int mTier;
+    private int mMisses;
+    // The tiers that have looked for all of their formats since the last barcode was found or
+    // the last final attempt.
+    private boolean[] mTriedTiers;
+    private int mTriedTierCount;
+
+    public ZXingFrameDecoder(Collection<BarcodeFormat> formats) {
+        setFormats(formats);
+    }
+
+    /** The formats to decode. Each tier looks for those of its formats that are in here. */
+    public synchronized void setFormats(Collection<BarcodeFormat> formats) {
+        mFormats = new ArrayList<BarcodeFormat>(formats);
+        buildPasses();
+    }
+
+    /**
+     * The passes to escalate through, e.g. {@link DecodeTier#ESCALATING_TIERS}. Unless set,
+     * {@link DecodeTier#SINGLE_TIER} decodes every frame the same way, looking for every
+     * format.
+     */
+    public synchronized void setDecodeTiers(List<DecodeTier> decodeTiers) {
+        if (decodeTiers.isEmpty()) {
+            throw new IllegalArgumentException("At least one decode tier is required.");
+        }
+        mDecodeTiers = new ArrayList<DecodeTier>(decodeTiers);
+        buildPasses();
+    }
+
+    public synchronized List<DecodeTier> getDecodeTiers() {
+        return Collections.unmodifiableList(mDecodeTiers);
+    }
+
+    /**
+     * Looks for the formats that are found most often on every frame and for the others only
+     * on some, see {@link FormatScheduler}. Null, the default, looks for every format on every
+     * frame.
+     */
+    public void setFormatScheduler(FormatScheduler formatScheduler) {
+        mFormatScheduler = formatScheduler;
+    }
+
+    public FormatScheduler getFormatScheduler() {
+        return mFormatScheduler;
+    }
+
+    /**
+     * Whether to run the 1D readers and each 2D reader at the same time on a few worker threads,
+     * so a frame takes as long as the slowest reader rather than all of them together. Mostly
+     * worth it with several 2D formats and {@link DecodeTier#isTryHarder()}. Only applies when
+     * looking for a single barcode, and not on devices with a single core. Off by default.
+     */
+    public void setParallelReaders(boolean parallelReaders) {
+        mParallelReaders = parallelReaders;
+    }
+
+    public boolean isParallelReaders() {
+        return mParallelReaders;
+    }
+
+    /**
+     * Picks a cheaper binarizer for evenly lit frames and the usual one for the others, see
+     * {@link BinarizerSelector}. Null, the default, binarizes every frame like
+     * {@link com.google.zxing.common.HybridBinarizer}. The binarizer used is reported through
+     * {@link PreviewFrame#setBinarizer} either way.
+     */
+    public void setBinarizerSelector(BinarizerSelector binarizerSelector) {
+        mBinarizerSelector = binarizerSelector;
+    }
+
+    public BinarizerSelector getBinarizerSelector() {
+        return mBinarizerSelector;
+    }
+
+    /**
+     * Tries a frame shrunk by 2 before decoding it at full resolution with one level, shrunk
+     * by 4 and then by 2 with two, and so on, so a barcode that fills much of a large preview
+     * is found in a fraction of the time. Levels that would leave less than
+     * {@link #MIN_PYRAMID_SIZE} pixels on the short side of the region are skipped, so small
+     * previews are always decoded at full resolution. The 1D formats are looked for first, at
+     * full resolution only: they are read a row at a time, which is cheap already and keeps
+     * their narrow bars apart. Only the 2D formats are looked for in the shrunk levels, so
+     * frames with a 1D barcode cost about the same as without the pyramid. Frames without a
+     * barcode pay for every level.
+     * Does not apply to scan lines or when looking for several barcodes. 0, the default,
+     * decodes at full resolution only.
+     */
+    public void setPyramidLevels(int pyramidLevels) {
+        if (pyramidLevels < 0 || pyramidLevels > MAX_PYRAMID_LEVELS) {
+            throw new IllegalArgumentException("Pyramid levels must be between 0 and " + MAX_PYRAMID_LEVELS + ".");
+        }
+        mPyramidLevels = pyramidLevels;
+    }
+
+    public int getPyramidLevels() {
+        return mPyramidLevels;
+    }
+
+    private synchronized Executor getReaderExecutor() {
+        if (mReaderExecutor == null) {
+            int threads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_READER_THREADS);
+            // Idle workers exit after a while, so nothing has to be shut down.
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private int mCount;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "BarcodeScannerReader-" + mCount++);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            mReaderExecutor = executor;
+        }
+        return mReaderExecutor;
+    }
+
+    private void buildPasses() {
+        Pass[] passes = new Pass[mDecodeTiers.size()];
+        for (int i = 0; i < passes.length; i++) {
+            passes[i] = new Pass(mDecodeTiers.get(i), mFormats);
+        }
+        mPasses = passes;
+        mTier = 0;
+        mMisses = 0;
+        mTriedTiers = new boolean[passes.length];
+        mTriedTierCount = 0;
+    }
+
+    private synchronized int nextTier(int tierCount) {
+        if (mTier >= tierCount) {
+            mTier = 0;
+            mMisses = 0;
+        }
+        return mTier;
+    }
+
+    /**
+     * @param allFormats whether the frame was searched for every format of the tier, and not
+     *                   only those a {@link FormatScheduler} expects
+     * @return whether nothing is left to try on the scene, see {@link PreviewFrame#setFinalAttempt}
+     */
+    private synchronized boolean recordOutcome(Pass[] passes, int tier, boolean found, boolean allFormats) {
+        if (passes != mPasses) {
+            // The tiers were changed while decoding, the new ones have not been tried yet.
+            return false;
+        }
+        if (found) {
+            mTier = 0;
+            mMisses = 0;
+            clearTriedTiers();
+            return true;
+        }
+        if (tier == mTier && ++mMisses >= passes[tier].mDecodeTier.getAttempts()) {
+            mTier = (tier + 1) % passes.length;
+            mMisses = 0;
+        }
+        if (allFormats && !mTriedTiers[tier]) {
+            mTriedTiers[tier] = true;
+            mTriedTierCount++;
+        }
+        if (mTriedTierCount == passes.length) {
+            // The next scene gets every tier again.
+            clearTriedTiers();
+            return true;
+        }
+        return false;
+    }
+
+    private void clearTriedTiers() {
+        for (int i = 0; i < mTriedTiers.length; i++) {
+            mTriedTiers[i] = false;
+        }
+        mTriedTierCount = 0;
+    }
+
+    @Override
+    public List<Result> decode(PreviewFrame frame, boolean multiple) {
+        Pass[] passes = mPasses;
+        int tier = nextTier(passes.length);
+        Pass pass = passes[tier];
+        frame.setDecodeTier(tier);
+
+        ZXingDecodeContext context = pass.mDecodeContext.get();
+        ReusableHybridBinarizer binarizer = prepare(context, null, pass, frame);
+        if(binarizer == null) {
+            return null;
+        }
+
+        FormatScheduler formatScheduler = mFormatScheduler;
+        int likelyFormats = pass.mFormatMask;
+        int otherFormats = 0;
+        if(formatScheduler != null) {
+            likelyFormats &= formatScheduler.getLikelyFormats();
+            if(likelyFormats == 0) {
+                likelyFormats = pass.mFormatMask;
+            }
+            if(formatScheduler.nextFrameProbes()) {
+                otherFormats = pass.mFormatMask & ~likelyFormats;
+            }
+        }
+
+        ScanLines scanLines = frame.getScanLines();
+        BinarizerSelector binarizerSelector = scanLines == null ? mBinarizerSelector : null;
+        BinarizerSelector.Binarizer binarizerType;
+        long selectTime = 0;
+        if(scanLines != null) {
+            // Single rows are always thresholded on their own histogram.
+            binarizerType = BinarizerSelector.Binarizer.GLOBAL_HISTOGRAM;
+        } else if(binarizerSelector != null) {
+            long selectStart = System.nanoTime();
+            // The tier's scaled region, which is what gets binarized, not the frame's crop.
+            binarizerType = binarizerSelector.select(context.getSource());
+            selectTime = System.nanoTime() - selectStart;
+        } else {
+            binarizerType = BinarizerSelector.Binarizer.HYBRID;
+        }
+        boolean globalHistogram = binarizerType == BinarizerSelector.Binarizer.GLOBAL_HISTOGRAM;
+        binarizer.setGlobalHistogram(globalHistogram);
+        frame.setBinarizer(binarizerType.name());
+
+        List<Result> rawResults = null;
+        long cropTime = 0;
+        long binarizeTime = selectTime;
+        ScannerTrace.beginSection(ScannerTrace.DECODE);
+        try {
+            if(scanLines != null) {
+                rawResults = decodeLines(context, pass.getReader(likelyFormats), binarizer, scanLines, frame);
+                if(otherFormats != 0 && rawResults == null) {
+                    rawResults = decodeLines(context, pass.getReader(otherFormats), binarizer, scanLines, frame);
+                }
+            } else {
+                int factor = multiple ? 1 : getPyramidFactor(binarizer);
+                int likelyTwoDFormats = likelyFormats & ~ParallelReaders.ONE_D_MASK;
+                int otherTwoDFormats = otherFormats & ~ParallelReaders.ONE_D_MASK;
+                if((likelyTwoDFormats | otherTwoDFormats) == 0) {
+                    factor = 1;
+                }
+                if(factor == 1) {
+                    rawResults = decodeRegion(context, pass, binarizer, likelyFormats, otherFormats, multiple);
+                } else {
+                    // The 1D readers only binarize a few rows at full resolution, which is cheaper
+                    // than averaging a single level, so they go first. Only the 2D readers are
+                    // run on the levels, coarsest first, and then at full resolution.
+                    rawResults = decodeRegion(context, pass, binarizer, likelyFormats & ParallelReaders.ONE_D_MASK,
+                            otherFormats & ParallelReaders.ONE_D_MASK, false);
+                    if(rawResults == null) {
+                        // Each level is averaged from the one below, so they are built finest first.
+                        for (int level = 2; level <= factor; level *= 2) {
+                            DownsampledRegion region = context.getDownsampledRegion(level);
+                            if(prepare(context, region, pass, frame) == null) {
+                                factor = level / 2;
+                                break;
+                            }
+                            cropTime += region.getDownsampleTime();
+                        }
+                    }
+                    for (; factor > 1 && rawResults == null; factor /= 2) {
+                        DownsampledRegion region = context.getDownsampledRegion(factor);
+                        ReusableHybridBinarizer levelBinarizer = region.getBinarizer();
+                        levelBinarizer.setGlobalHistogram(globalHistogram);
+                        rawResults = decodeRegion(context, pass, levelBinarizer, likelyTwoDFormats, otherTwoDFormats, false);
+                        cropTime += levelBinarizer.getCopyTime();
+                        binarizeTime += levelBinarizer.getBinarizeTime();
+                        if(rawResults != null) {
+                            for (Result rawResult : rawResults) {
+                                region.toRegionCoordinates(rawResult);
+                            }
+                        }
+                    }
+                    if(rawResults == null) {
+                        rawResults = decodeRegion(context, pass, binarizer, likelyTwoDFormats, otherTwoDFormats, false);
+                    }
+                }
+            }
+        } finally {
+            ScannerTrace.endSection();
+        }
+        // The rotation and crop happen while copying the luminance out for binarization.
+        frame.setCropTime(cropTime + binarizer.getCopyTime());
+        frame.setBinarizeTime(binarizeTime + binarizer.getBinarizeTime());
+        frame.setFinalAttempt(recordOutcome(passes, tier, rawResults != null,
+                (likelyFormats | otherFormats) == pass.mFormatMask));
+        if(binarizerSelector != null) {
+            binarizerSelector.recordOutcome(binarizerType, rawResults != null);
+        }
+        if(rawResults != null && formatScheduler != null) {
+            for (Result rawResult : rawResults) {
+                formatScheduler.recordHit(rawResult.getBarcodeFormat());
+            }
+        }
+        return rawResults;
+    }
+
+    /**
+     * The factor to shrink the region by for the first attempt: the largest allowed by the
+     * pyramid levels that leaves at least {@link #MIN_PYRAMID_SIZE} pixels on the short side.
+     */
+    private int getPyramidFactor(ReusableHybridBinarizer binarizer) {
+        int shortSide = Math.min(binarizer.getWidth(), binarizer.getHeight());
+        int factor = 1 << mPyramidLevels;
+        while (factor > 1 && shortSide / factor < MIN_PYRAMID_SIZE) {
+            factor /= 2;
+        }
+        return factor;
+    }
+
+    /**
+     * Decodes the likely formats, and on probe frames the others, from one binarized region.
+     *
+     * @return the barcodes found, or null if there are none
+     */
+    private List<Result> decodeRegion(ZXingDecodeContext context, Pass pass, ReusableHybridBinarizer binarizer,
+                                      int likelyFormats, int otherFormats, boolean multiple) {
+        if(likelyFormats == 0) {
+            // A reader without formats would look for all of them.
+            likelyFormats = otherFormats;
+            otherFormats = 0;
+        }
+        if(likelyFormats == 0) {
+            return null;
+        }
+        List<Result> rawResults = decodeFormats(context, pass, binarizer, likelyFormats, multiple);
+        if(otherFormats != 0 && (rawResults == null || multiple)) {
+            rawResults = addResults(rawResults, decodeFormats(context, pass, binarizer, otherFormats, multiple));
+        }
+        return rawResults;
+    }
+
+    /**
+     * Decodes the formats from the binarizer's bitmap, which is kept from frame to frame. The
+     * black matrix it holds is brought up to date before the 2D readers get it. Unless they all
+     * run at once anyway, the 1D readers are run on their own in the order
+     * {@link MultiFormatReader} would, so a frame they find a barcode in is never binarized.
+     *
+     * @return the barcodes found, or null if there are none
+     */
+    private List<Result> decodeFormats(ZXingDecodeContext context, Pass pass, ReusableHybridBinarizer binarizer,
+                                       int formats, boolean multiple) {
+        int oneDFormats = formats & ParallelReaders.ONE_D_MASK;
+        int twoDFormats = formats & ~ParallelReaders.ONE_D_MASK;
+        BinaryBitmap bitmap = binarizer.getBinaryBitmap();
+        boolean together = multiple || mParallelReaders && pass.getReader(formats).mParallelReaders.isParallel();
+        if(oneDFormats == 0 || twoDFormats == 0 || together) {
+            if(twoDFormats != 0 && !binarize(binarizer)) {
+                return oneDFormats == 0 ? null : decode(context, pass.getReader(oneDFormats), bitmap, multiple);
+            }
+            return decode(context, pass.getReader(formats), bitmap, multiple);
+        }
+
+        // Trying harder, MultiFormatReader leaves the 1D readers for last.
+        boolean tryHarder = pass.mDecodeTier.isTryHarder();
+        List<Result> rawResults = null;
+        if(!tryHarder) {
+            rawResults = decode(context, pass.getReader(oneDFormats), bitmap, false);
+        }
+        if(rawResults == null && binarize(binarizer)) {
+            rawResults = decode(context, pass.getReader(twoDFormats), bitmap, false);
+        }
+        if(rawResults == null && tryHarder) {
+            rawResults = decode(context, pass.getReader(oneDFormats), bitmap, false);
+        }
+        return rawResults;
+    }
+
+    /** Binarizes the frame, if it was not yet, and returns false if there is nothing in it. */
+    private static boolean binarize(ReusableHybridBinarizer binarizer) {
+        try {
+            binarizer.getBlackMatrix();
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    /** @return the barcodes found by the reader, or null if there are none */
+    private List<Result> decode(ZXingDecodeContext context, FormatReader reader, BinaryBitmap bitmap, boolean multiple) {
+        if(!multiple && mParallelReaders && reader.mParallelReaders.isParallel()) {
+            ParallelReaders.Batch batch = reader.mParallelReaders.decode(bitmap, getReaderExecutor());
+            context.setPendingReaders(batch);
+            Result rawResult = batch.await();
+            if(rawResult == null) {
+                return null;
+            }
+            List<Result> rawResults = new ArrayList<Result>(1);
+            rawResults.add(rawResult);
+            return rawResults;
+        }
+
+        MultiFormatReader multiFormatReader = reader.mMultiFormatReader;
+        try {
+            if(multiple) {
+                return decodeMultiple(multiFormatReader, reader.mHints, bitmap);
+            }
+            Result rawResult = multiFormatReader.decodeWithState(bitmap);
+            // The list goes to the caller with the result, so it is only made for a hit.
+            List<Result> rawResults = new ArrayList<Result>(1);
+            rawResults.add(rawResult);
+            return rawResults;
+        } catch (ReaderException re) {
+            // continue
+        } catch (NullPointerException npe) {
+            // This is terrible
+        } catch (ArrayIndexOutOfBoundsException aoe) {
+
+        } finally {
+            multiFormatReader.reset();
+        }
+        return null;
+    }
+
+    /**
+     * Decodes only the given lines of the frame's framing rect with the 1D readers, binarizing
+     * just those rows of the region. Each line is also tried reversed, for barcodes that are upside down, which are
+     * reported with an {@link ResultMetadataType#ORIENTATION} of 180.
+     *
+     * @return the first barcode found, or null if there is none
+     */
+    private static List<Result> decodeLines(ZXingDecodeContext context, FormatReader reader,
+                                            ReusableHybridBinarizer binarizer, ScanLines scanLines,
+                                            PreviewFrame frame) {
+        OneDReader oneDReader = reader.mOneDReader;
+        if (oneDReader == null) {
+            return null;
+        }
+        int width = binarizer.getWidth();
+        int height = binarizer.getHeight();
+        for (int i = 0; i < scanLines.getLineCount(); i++) {
+            // Placed in the framing rect like the viewfinder draws them, whatever region the
+            // tier decodes around it.
+            int y = frame.getCropTop() + scanLines.getLineOffset(i, frame.getCropHeight()) - context.getCropTop();
+            if (y < 0 || y >= height) {
+                continue;
+            }
+            BitArray row;
+            try {
+                row = binarizer.getBlackRow(y, context.getRow(width));
+            } catch (NotFoundException e) {
+                continue;
+            }
+            for (int attempt = 0; attempt < 2; attempt++) {
+                if (attempt == 1) {
+                    row.reverse();
+                }
+                try {
+                    Result rawResult = oneDReader.decodeRow(y, row, reader.mHints);
+                    if (attempt == 1) {
+                        // Like OneDReader.doDecode: the barcode is upside down, and its points
+                        // were found in the reversed row.
+                        rawResult.putMetadata(ResultMetadataType.ORIENTATION, 180);
+                        ResultPoint[] points = rawResult.getResultPoints();
+                        if (points != null) {
+                            for (int p = 0; p < points.length; p++) {
+                                if (points[p] != null) {
+                                    points[p] = new ResultPoint(width - points[p].getX() - 1, points[p].getY());
+                                }
+                            }
+                        }
+                    }
+                    List<Result> rawResults = new ArrayList<Result>(1);
+                    rawResults.add(rawResult);
+                    return rawResults;
+                } catch (ReaderException re) {
+                    // continue
+                } catch (NullPointerException npe) {
+                    // continue
+                } catch (ArrayIndexOutOfBoundsException aoe) {
+                    // continue
+                } finally {
+                    oneDReader.reset();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<Result> addResults(List<Result> rawResults, List<Result> moreResults) {
+        if (rawResults == null) {
+            return moreResults;
+        }
+        if (moreResults != null) {
+            for (Result rawResult : moreResults) {
+                if (!containsResult(rawResults, rawResult)) {
+                    rawResults.add(rawResult);
+                }
+            }
+        }
+        return rawResults;
+    }
+
+    /**
+     * Points the pass's binarizer, or the downsampled region's if there is one, at the frame's
+     * crop region, scaled by the pass's tier.
+     */
+    private static ReusableHybridBinarizer prepare(ZXingDecodeContext context, DownsampledRegion region,
+                                                   Pass pass, PreviewFrame frame) {
+        int left = frame.getCropLeft();
+        int top = frame.getCropTop();
+        int width = frame.getCropWidth();
+        int height = frame.getCropHeight();
+        float cropScale = pass.mDecodeTier.getCropScale();
+        if (cropScale != 1f) {
+            boolean sideways = frame.getRotation() == 90 || frame.getRotation() == 270;
+            int rotatedWidth = sideways ? frame.getHeight() : frame.getWidth();
+            int rotatedHeight = sideways ? frame.getWidth() : frame.getHeight();
+            width = Math.max(1, Math.min(rotatedWidth, Math.round(frame.getCropWidth() * cropScale)));
+            height = Math.max(1, Math.min(rotatedHeight, Math.round(frame.getCropHeight() * cropScale)));
+            left = frame.getCropLeft() + (frame.getCropWidth() - width) / 2;
+            top = frame.getCropTop() + (frame.getCropHeight() - height) / 2;
+            left = Math.max(0, Math.min(left, rotatedWidth - width));
+            top = Math.max(0, Math.min(top, rotatedHeight - height));
+        }
+        if (region != null) {
+            return region.prepare(frame, left, top, width, height);
+        }
+        return context.prepare(frame, left, top, width, height);
+    }
+
+    @Override
+    public Object getFormat(Result rawResult) {
+        return rawResult.getBarcodeFormat();
+    }
+
+    @Override
+    public String getContents(Result rawResult) {
+        return rawResult.getText();
+    }
+
+    /**
+     * Finds every barcode in the bitmap. Several QR codes are found in a single pass, other
+     * formats by repeatedly decoding the regions around the barcodes found so far.
+     */
+    private List<Result> decodeMultiple(MultiFormatReader multiFormatReader, Map<DecodeHintType,Object> hints,
+                                        BinaryBitmap bitmap) throws NotFoundException {
+        List<Result> rawResults = new ArrayList<Result>();
+
+        Collection<?> formats = (Collection<?>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+        if(formats.contains(BarcodeFormat.QR_CODE)) {
+            try {
+                Collections.addAll(rawResults, mQRCodeMultiReader.decodeMultiple(bitmap, hints));
+            } catch (NotFoundException e) {
+                // continue with the other formats
+            }
+        }
+
+        try {
+            Reader reader = new StatefulReader(multiFormatReader);
+            for (Result rawResult : new GenericMultipleBarcodeReader(reader).decodeMultiple(bitmap, hints)) {
+                if (!containsResult(rawResults, rawResult)) {
+                    rawResults.add(rawResult);
+                }
+            }
+        } catch (NotFoundException e) {
+            if (rawResults.isEmpty()) {
+                throw e;
+            }
+        }
+        return rawResults;
+    }
+
+    private static boolean containsResult(List<Result> rawResults, Result rawResult) {
+        for (Result other : rawResults) {
+            if (other.getBarcodeFormat() == rawResult.getBarcodeFormat() && other.getText().equals(rawResult.getText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** A {@link DecodeTier} set up for the formats of the decoder. */
+    private static class Pass {
+        private final DecodeTier mDecodeTier;
+        private final List<BarcodeFormat> mFormats;
+        private final int mFormatMask;
+        // Readers for the subsets of the formats a FormatScheduler asked for, by format mask.
+        private final Map<Integer, FormatReader> mReaders = new HashMap<Integer, FormatReader>();
+        private final ThreadLocal<ZXingDecodeContext> mDecodeContext = new ThreadLocal<ZXingDecodeContext>() {
+            @Override
+            protected ZXingDecodeContext initialValue() {
+                return new ZXingDecodeContext();
+            }
+        };
+
+        Pass(DecodeTier decodeTier, List<BarcodeFormat> formats) {
+            List<BarcodeFormat> tierFormats = new ArrayList<BarcodeFormat>();
+            if (decodeTier.getFormats() != null) {
+                for (BarcodeFormat format : decodeTier.getFormats()) {
+                    if (formats.contains(format)) {
+                        tierFormats.add(format);
+                    }
+                }
+            }
+            if (tierFormats.isEmpty()) {
+                tierFormats.addAll(formats);
+            }
+
+            mDecodeTier = decodeTier;
+            mFormats = tierFormats;
+            mFormatMask = FormatScheduler.toMask(tierFormats);
+        }
+
+        /** A reader for those of the pass's formats that are in the mask. */
+        synchronized FormatReader getReader(int formatMask) {
+            FormatReader reader = mReaders.get(formatMask);
+            if (reader == null) {
+                List<BarcodeFormat> formats = new ArrayList<BarcodeFormat>();
+                for (BarcodeFormat format : mFormats) {
+                    if ((formatMask & (1 << format.ordinal())) != 0) {
+                        formats.add(format);
+                    }
+                }
+                reader = new FormatReader(formats, mDecodeTier.isTryHarder());
+                mReaders.put(formatMask, reader);
+            }
+            return reader;
+        }
+    }
+
+    private static class FormatReader {
+        private final Map<DecodeHintType,Object> mHints;
+        private final MultiFormatReader mMultiFormatReader;
+        private final ParallelReaders mParallelReaders;
+        private final OneDReader mOneDReader;
+
+        FormatReader(List<BarcodeFormat> formats, boolean tryHarder) {
+            mHints = new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
+            mHints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+            if (tryHarder) {
+                mHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+            }
+            mMultiFormatReader = new MultiFormatReader();
+            mMultiFormatReader.setHints(mHints);
+            mParallelReaders = new ParallelReaders(formats, mHints);
+            mOneDReader = ParallelReaders.hasOneDFormat(formats) ? new MultiFormatOneDReader(mHints) : null;
+        }
+    }
+
+    /**
+     * Lets {@link GenericMultipleBarcodeReader} use the readers already set up by
+     * {@link MultiFormatReader#setHints}, instead of building new ones for every decode.
+     */
+    private static class StatefulReader implements Reader {
+        private final MultiFormatReader mReader;
+
+        StatefulReader(MultiFormatReader reader) {
+            mReader = reader;
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image) throws NotFoundException {
+            return mReader.decodeWithState(image);
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+            return mReader.decodeWithState(image);
+        }
+
+        @Override
+        public void reset() {
+            mReader.reset();
+        }
+    }
+}
@@ -1,38 +1,33 @@
 package me.dm7.barcodescanner.zxing;
 
 import android.content.Context;
-import android.content.res.Configuration;
 import android.graphics.Rect;
-import android.hardware.Camera;
 import android.util.AttributeSet;
 
 import com.google.zxing.BarcodeFormat;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
 import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.EnumMap;
 import java.util.List;
-import java.util.Map;
 
 import me.dm7.barcodescanner.core.BarcodeScannerView;
-import me.dm7.barcodescanner.core.DisplayUtils;
 
-public class ZXingScannerView extends BarcodeScannerView {
+public class ZXingScannerView extends BarcodeScannerView<Result> {
     public interface ResultHandler {
         public void handleResult(Result rawResult);
     }
 
-    private MultiFormatReader mMultiFormatReader;
+    public interface MultipleResultHandler {
+        public void handleResults(List<Result> rawResults);
+    }
+
     public static final List<BarcodeFormat> ALL_FORMATS = new ArrayList<BarcodeFormat>();
     private List<BarcodeFormat> mFormats;
     private ResultHandler mResultHandler;
+    private MultipleResultHandler mMultipleResultHandler;
+    private final ZXingFrameDecoder mFrameDecoder = new ZXingFrameDecoder(getFormats());
 
     static {
         ALL_FORMATS.add(BarcodeFormat.UPC_A);
@@ -52,23 +47,92 @@ public class ZXingScannerView extends BarcodeScannerView {
 
     public ZXingScannerView(Context context) {
         super(context);
-        initMultiFormatReader();
+        setFrameDecoder(mFrameDecoder);
     }
 
     public ZXingScannerView(Context context, AttributeSet attributeSet) {
         super(context, attributeSet);
-        initMultiFormatReader();
+        setFrameDecoder(mFrameDecoder);
     }
 
     public void setFormats(List<BarcodeFormat> formats) {
         mFormats = formats;
-        initMultiFormatReader();
+        mFrameDecoder.setFormats(getFormats());
+    }
+
+    /**
+     * The passes frames are decoded with, from cheap to expensive, see {@link DecodeTier}.
+     * {@link DecodeTier#SINGLE_TIER}, every format on every frame, unless set.
+     */
+    public void setDecodeTiers(List<DecodeTier> decodeTiers) {
+        mFrameDecoder.setDecodeTiers(decodeTiers);
+    }
+
+    public List<DecodeTier> getDecodeTiers() {
+        return mFrameDecoder.getDecodeTiers();
+    }
+
+    /**
+     * Looks for the formats that are found most often on every frame and for the others only
+     * on some, see {@link FormatScheduler}. Off by default.
+     */
+    public void setFormatScheduler(FormatScheduler formatScheduler) {
+        mFrameDecoder.setFormatScheduler(formatScheduler);
+    }
+
+    public FormatScheduler getFormatScheduler() {
+        return mFrameDecoder.getFormatScheduler();
+    }
+
+    /**
+     * Runs the 1D readers and each 2D reader at the same time on a few worker threads, see
+     * {@link ZXingFrameDecoder#setParallelReaders}. Off by default.
+     */
+    public void setParallelReaders(boolean parallelReaders) {
+        mFrameDecoder.setParallelReaders(parallelReaders);
+    }
+
+    public boolean isParallelReaders() {
+        return mFrameDecoder.isParallelReaders();
+    }
+
+    /**
+     * Binarizes evenly lit frames with a single threshold, which is cheaper, and the others
+     * with local thresholds, see {@link BinarizerSelector}. Off by default.
+     */
+    public void setBinarizerSelector(BinarizerSelector binarizerSelector) {
+        mFrameDecoder.setBinarizerSelector(binarizerSelector);
+    }
+
+    public BinarizerSelector getBinarizerSelector() {
+        return mFrameDecoder.getBinarizerSelector();
+    }
+
+    /**
+     * Looks for 2D barcodes at lower resolutions before decoding a frame at full resolution,
+     * see {@link ZXingFrameDecoder#setPyramidLevels}. 0, the default, turns it off.
+     */
+    public void setPyramidLevels(int pyramidLevels) {
+        mFrameDecoder.setPyramidLevels(pyramidLevels);
+    }
+
+    public int getPyramidLevels() {
+        return mFrameDecoder.getPyramidLevels();
     }
 
     public void setResultHandler(ResultHandler resultHandler) {
         mResultHandler = resultHandler;
     }
 
+    /**
+     * Once set, every barcode found in a frame is decoded and delivered together. The
+     * {@link ResultHandler}, if any, still receives the first of them.
+     */
+    public void setMultipleResultHandler(MultipleResultHandler multipleResultHandler) {
+        mMultipleResultHandler = multipleResultHandler;
+        setDecodeMultiple(multipleResultHandler != null);
+    }
+
     public Collection<BarcodeFormat> getFormats() {
         if(mFormats == null) {
             return ALL_FORMATS;
@@ -76,57 +140,13 @@ public class ZXingScannerView extends BarcodeScannerView {
         return mFormats;
     }
 
-    private void initMultiFormatReader() {
-        Map<DecodeHintType,Object> hints = new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
-        hints.put(DecodeHintType.POSSIBLE_FORMATS, getFormats());
-        mMultiFormatReader = new MultiFormatReader();
-        mMultiFormatReader.setHints(hints);
-    }
-
     @Override
-    public void onPreviewFrame(byte[] data, Camera camera) {
-        Camera.Parameters parameters = camera.getParameters();
-        Camera.Size size = parameters.getPreviewSize();
-        int width = size.width;
-        int height = size.height;
-
-        if(DisplayUtils.getScreenOrientation(getContext()) == Configuration.ORIENTATION_PORTRAIT) {
-            byte[] rotatedData = new byte[data.length];
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++)
-                    rotatedData[x * height + height - y - 1] = data[x + y * width];
-            }
-            int tmp = width;
-            width = height;
-            height = tmp;
-            data = rotatedData;
+    protected void handleResults(List<Result> rawResults) {
+        if(mMultipleResultHandler != null) {
+            mMultipleResultHandler.handleResults(rawResults);
         }
-
-        Result rawResult = null;
-        PlanarYUVLuminanceSource source = buildLuminanceSource(data, width, height);
-
-        if(source != null) {
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-            try {
-                rawResult = mMultiFormatReader.decodeWithState(bitmap);
-            } catch (ReaderException re) {
-                // continue
-            } catch (NullPointerException npe) {
-                // This is terrible
-            } catch (ArrayIndexOutOfBoundsException aoe) {
-
-            } finally {
-                mMultiFormatReader.reset();
-            }
-        }
-
-        if (rawResult != null) {
-            stopCamera();
-            if(mResultHandler != null) {
-                mResultHandler.handleResult(rawResult);
-            }
-        } else {
-            camera.setOneShotPreviewCallback(this);
+        if(mResultHandler != null) {
+            mResultHandler.handleResult(rawResults.get(0));
         }
     }
 
@@ -146,4 +166,4 @@ public class ZXingScannerView extends BarcodeScannerView {
 
         return source;
     }
-}
\ No newline at end of file
+}